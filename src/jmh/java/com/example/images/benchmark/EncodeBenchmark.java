@@ -0,0 +1,119 @@
+package com.example.images.benchmark;
+
+import com.example.images.dto.TransformationRequest;
+import com.example.images.util.EncodeOptions;
+import com.example.images.util.ImageEncoder;
+import com.example.images.util.ImageEncoders;
+import com.example.images.util.ImageProcessorUtil;
+import com.example.images.util.TransformedImage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Encoding cost per output format, and the full file-to-file chain (decode, transform, watermark, encode)
+ * as run by the transform endpoint. The source file is stored in {@code sourceFormat}.
+ * <p>
+ * INT_ARGB inputs are flattened onto white for jpg and bmp, as the endpoint does, so those
+ * combinations also include the flatten. webp needs the system libwebp; without it the webp
+ * combinations fail in setup and JMH carries on with the rest (or pass -p format=jpg,png,bmp).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--enable-preview", "--enable-native-access=ALL-UNNAMED", "--add-modules", "jdk.incubator.vector"})
+public class EncodeBenchmark {
+
+    @Param({"thumb", "2mp", "12mp", "24mp"})
+    public String size;
+
+    @Param({"INT_RGB", "3BYTE_BGR", "BYTE_GRAY", "INT_ARGB"})
+    public String pixelType;
+
+    @Param({"jpg", "png", "bmp", "webp"})
+    public String format;
+
+    @Param({"jpg"})
+    public String sourceFormat;
+
+    private BufferedImage image;
+    private Path workDir;
+    private Path sourceFile;
+    private TransformationRequest.Transformations chain;
+    private ImageEncoder encoder;
+    private Path encoded;
+    private Path chainOutput;
+
+    @Setup(Level.Trial)
+    public void prepare() throws IOException {
+        image = TestImages.generate(size, pixelType);
+        workDir = Files.createTempDirectory("image-bench");
+        sourceFile = workDir.resolve("source." + sourceFormat);
+        ImageEncoder sourceEncoder = ImageEncoders.forFormat(sourceFormat);
+        if (sourceEncoder == null) {
+            throw new IOException("No encoder for " + sourceFormat);
+        }
+        sourceEncoder.encode(image, EncodeOptions.DEFAULTS, sourceFile);
+
+        int w = image.getWidth();
+        int h = image.getHeight();
+        chain = new TransformationRequest.Transformations();
+        chain.setResize(TransformBenchmark.resizeTo(w / 2, h / 2));
+        chain.setCrop(TransformBenchmark.cropTo(0, 0, w / 4, h / 4));
+        chain.setRotate(90);
+        chain.setFilters(TransformBenchmark.filters(false, true));
+        chain.setWatermark("benchmark");
+        chain.setFormat(format);
+
+        encoder = ImageEncoders.forFormat(format);
+        if (encoder == null) {
+            throw new IOException("No encoder for " + format + " (webp needs libwebp installed)");
+        }
+        encoded = workDir.resolve("encoded." + format);
+        chainOutput = workDir.resolve("out." + format);
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanUp() throws IOException {
+        try (Stream<Path> files = Files.walk(workDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public long encode() throws IOException {
+        encoder.encode(image, EncodeOptions.DEFAULTS, encoded);
+        return Files.size(encoded);
+    }
+
+    @Benchmark
+    public BufferedImage decode() throws IOException {
+        return ImageIO.read(sourceFile.toFile());
+    }
+
+    @Benchmark
+    public TransformedImage fullChain() throws IOException {
+        return ImageProcessorUtil.applyTransformations(sourceFile, chain, chainOutput);
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.images.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Procedurally generated benchmark inputs, so no image fixtures need to be downloaded.
+ * A mix of smooth gradients, periodic detail and noise keeps encoders and filters honest.
+ */
+final class TestImages {
+
+    private TestImages() {
+    }
+
+    static int[] dimensions(String size) {
+        return switch (size) {
+            case "thumb" -> new int[]{320, 240};
+            case "2mp" -> new int[]{1600, 1200};
+            case "12mp" -> new int[]{4000, 3000};
+            case "24mp" -> new int[]{6000, 4000};
+            default -> throw new IllegalArgumentException("Unknown size " + size);
+        };
+    }
+
+    static int imageType(String type) {
+        return switch (type) {
+            case "INT_RGB" -> BufferedImage.TYPE_INT_RGB;
+            case "3BYTE_BGR" -> BufferedImage.TYPE_3BYTE_BGR;
+            case "BYTE_GRAY" -> BufferedImage.TYPE_BYTE_GRAY;
+            case "INT_ARGB" -> BufferedImage.TYPE_INT_ARGB;
+            default -> throw new IllegalArgumentException("Unknown pixel type " + type);
+        };
+    }
+
+    static BufferedImage generate(String size, String type) {
+        int[] dims = dimensions(size);
+        int w = dims[0];
+        int h = dims[1];
+        BufferedImage img = new BufferedImage(w, h, imageType(type));
+        Random random = new Random(42);
+        int[] row = new int[w];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                double wave = Math.sin(x * 0.021) * Math.cos(y * 0.017);
+                int r = clamp(x * 255 / w + (int) (40 * wave) + random.nextInt(16));
+                int g = clamp(y * 255 / h - (int) (40 * wave) + random.nextInt(16));
+                int b = clamp(128 + (int) (90 * Math.sin((x + y) * 0.05)) + random.nextInt(16));
+                int a = 0xC0 + ((x ^ y) & 0x3F);
+                row[x] = (a << 24) | (r << 16) | (g << 8) | b;
+            }
+            img.setRGB(0, y, w, 1, row, 0, w);
+        }
+        return img;
+    }
+
+    private static int clamp(int v) {
+        return Math.max(0, Math.min(255, v));
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.images.benchmark;
+
+import com.example.images.dto.TransformationRequest;
+import com.example.images.util.ImageProcessorUtil;
+import com.example.images.util.TransformPipeline;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-operation cost of the in-memory transform path, across image sizes and pixel types.
+ * Each operation runs through {@link TransformPipeline} with a single-step spec; the full chain
+ * is measured both fused and with the step-by-step reference.
+ * <p>
+ * Every benchmark leaves the generated source untouched, so nothing is copied per invocation:
+ * the pipeline runs with {@link TransformPipeline#executeDetached}, as it does for shared decodes,
+ * and {@link #copy} measures the full-image copy that some single-step specs make inside it.
+ * Only the watermark draws into its input, onto a per-iteration copy (drawing over an earlier
+ * watermark costs the same).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--enable-preview", "--enable-native-access=ALL-UNNAMED", "--add-modules", "jdk.incubator.vector"})
+public class TransformBenchmark {
+
+    @Param({"thumb", "2mp", "12mp", "24mp"})
+    public String size;
+
+    @Param({"INT_RGB", "3BYTE_BGR", "BYTE_GRAY", "INT_ARGB"})
+    public String pixelType;
+
+    private BufferedImage source;
+    private BufferedImage watermarkCanvas;
+
+    private TransformationRequest.Transformations resize;
+    private TransformationRequest.Transformations rotate;
+    private TransformationRequest.Transformations crop;
+    private TransformationRequest.Transformations sepia;
+    private TransformationRequest.Transformations grayscale;
+    private TransformationRequest.Transformations watermark;
+    private TransformationRequest.Transformations chain;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        source = TestImages.generate(size, pixelType);
+        int w = source.getWidth();
+        int h = source.getHeight();
+
+        resize = new TransformationRequest.Transformations();
+        resize.setResize(resizeTo(w / 2, h / 2));
+
+        rotate = new TransformationRequest.Transformations();
+        rotate.setRotate(90);
+
+        crop = new TransformationRequest.Transformations();
+        crop.setCrop(cropTo(w / 4, h / 4, w / 2, h / 2));
+
+        sepia = new TransformationRequest.Transformations();
+        sepia.setFilters(filters(false, true));
+
+        grayscale = new TransformationRequest.Transformations();
+        grayscale.setFilters(filters(true, false));
+
+        watermark = new TransformationRequest.Transformations();
+        watermark.setWatermark("benchmark");
+
+        chain = new TransformationRequest.Transformations();
+        chain.setResize(resizeTo(w * 3 / 4, h * 3 / 4));
+        chain.setCrop(cropTo(0, 0, w / 2, h / 2));
+        chain.setRotate(90);
+        chain.setFlip(true);
+        chain.setMirror(true);
+        chain.setFilters(filters(true, true));
+        chain.setWatermark("benchmark");
+    }
+
+    @Setup(Level.Iteration)
+    public void copyWatermarkCanvas() {
+        watermarkCanvas = copyOf(source);
+    }
+
+    @Benchmark
+    public BufferedImage copy() {
+        return copyOf(source);
+    }
+
+    @Benchmark
+    public BufferedImage resize() throws IOException {
+        return run(resize);
+    }
+
+    @Benchmark
+    public BufferedImage rotate() throws IOException {
+        return run(rotate);
+    }
+
+    @Benchmark
+    public BufferedImage crop() throws IOException {
+        return run(crop);
+    }
+
+    @Benchmark
+    public BufferedImage sepia() throws IOException {
+        return run(sepia);
+    }
+
+    @Benchmark
+    public BufferedImage grayscale() throws IOException {
+        return run(grayscale);
+    }
+
+    @Benchmark
+    public BufferedImage watermark() {
+        return ImageProcessorUtil.applyStepwise(watermarkCanvas, watermark);
+    }
+
+    @Benchmark
+    public BufferedImage chainFused() throws IOException {
+        // The pipeline leaves watermarking to the caller, as applyTransformations does
+        return ImageProcessorUtil.applyStepwise(run(chain), watermark);
+    }
+
+    @Benchmark
+    public BufferedImage chainStepwise() {
+        // Resizes first, so the watermark is drawn on a new image and the source stays untouched
+        return ImageProcessorUtil.applyStepwise(source, chain);
+    }
+
+    private BufferedImage run(TransformationRequest.Transformations t) throws IOException {
+        return TransformPipeline.compile(source.getWidth(), source.getHeight(), t).executeDetached(source);
+    }
+
+    private static BufferedImage copyOf(BufferedImage image) {
+        return new BufferedImage(image.getColorModel(), image.copyData(null), image.isAlphaPremultiplied(), null);
+    }
+
+    static TransformationRequest.Resize resizeTo(int width, int height) {
+        TransformationRequest.Resize r = new TransformationRequest.Resize();
+        r.setWidth(width);
+        r.setHeight(height);
+        return r;
+    }
+
+    static TransformationRequest.Crop cropTo(int x, int y, int width, int height) {
+        TransformationRequest.Crop c = new TransformationRequest.Crop();
+        c.setX(x);
+        c.setY(y);
+        c.setWidth(width);
+        c.setHeight(height);
+        return c;
+    }
+
+    static TransformationRequest.Filters filters(boolean grayscale, boolean sepia) {
+        TransformationRequest.Filters f = new TransformationRequest.Filters();
+        f.setGrayscale(grayscale);
+        f.setSepia(sepia);
+        return f;
+    }
+}
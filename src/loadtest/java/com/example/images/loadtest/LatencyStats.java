@@ -0,0 +1,74 @@
+package com.example.images.loadtest;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Latency samples and status counts for one endpoint. Samples are kept raw (microseconds) so
+ * percentiles are exact; a few minutes of load is at most a few million longs. Rate-limited
+ * responses (429) are only counted: they are rejected before any work and would skew the latencies.
+ */
+class LatencyStats {
+
+    private final String name;
+    private long[] samples = new long[4096];
+    private int count;
+    private final Map<Integer, Integer> statuses = new TreeMap<>();
+    private int failures;
+    private int rateLimited;
+
+    LatencyStats(String name) {
+        this.name = name;
+    }
+
+    synchronized void record(long micros, int status) {
+        if (status == 429) {
+            rateLimited++;
+            return;
+        }
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = micros;
+        statuses.merge(status, 1, Integer::sum);
+    }
+
+    /** Transport-level failure: no HTTP status was received. */
+    synchronized void recordFailure() {
+        failures++;
+    }
+
+    synchronized int serverErrors() {
+        int n = failures;
+        for (Map.Entry<Integer, Integer> e : statuses.entrySet()) {
+            if (e.getKey() >= 500) n += e.getValue();
+        }
+        return n;
+    }
+
+    synchronized int rateLimited() {
+        return rateLimited;
+    }
+
+    synchronized String report(double seconds) {
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        return String.format("%-10s %8d %10.1f %9.2f %9.2f %9.2f %9.2f %8d  %s%s",
+                name, count, count / seconds,
+                percentile(sorted, 50) / 1000.0, percentile(sorted, 95) / 1000.0,
+                percentile(sorted, 99) / 1000.0, (count > 0 ? sorted[count - 1] : 0) / 1000.0,
+                rateLimited, statuses, failures > 0 ? " failed=" + failures : "");
+    }
+
+    static String header() {
+        return String.format("%-10s %8s %10s %9s %9s %9s %9s %8s  %s",
+                "endpoint", "requests", "req/s", "p50 ms", "p95 ms", "p99 ms", "max ms", "429s", "statuses");
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(rank, sorted.length - 1))];
+    }
+}
@@ -0,0 +1,370 @@
+package com.example.images.loadtest;
+
+import com.example.images.ImageServiceApplication;
+import com.example.images.service.S3StandIn;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end load test: boots the application in-process on a random port (H2 in memory, uploads in a
+ * temp directory), registers and logs in a set of users, then drives a weighted mix of uploads,
+ * transforms, retrieves and list calls from a pool of client threads.
+ * <p>
+ * Prints request count, throughput and p50/p95/p99/max latency per endpoint, plus the status codes seen.
+ * Rate-limited requests (429) are counted on their own and left out of the latency figures; the per-user
+ * rate limits are disabled unless a limit is passed explicitly. Exits with status 1 on any 5xx or
+ * transport failure so it can gate a build.
+ * <p>
+ * Options ({@code --name=value}): users, threads, warmup and duration (seconds), upload, transform,
+ * retrieve and list (mix weights), transform-mode (sync|async), storage (local|s3; s3 runs against an
+ * in-memory {@link S3StandIn} with a small part size, so larger files go up as multipart uploads). Any
+ * other {@code --key=value} is passed through to Spring, e.g. {@code --app.transform-jobs.workers=8}.
+ */
+public class LoadTest {
+
+    private static final String PASSWORD = "load-test-password";
+
+    private final Map<String, String> options;
+    private final List<String> springArgs;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final List<byte[]> uploads = new ArrayList<>();
+    private final Map<String, LatencyStats> stats = new LinkedHashMap<>();
+    private String baseUrl;
+
+    private record VirtualUser(String token, List<ImageRef> images) {
+    }
+
+    private record ImageRef(long id, int width, int height) {
+    }
+
+    LoadTest(String[] args) {
+        options = new LinkedHashMap<>(Map.of(
+                "users", "20", "threads", "16", "warmup", "10", "duration", "60",
+                "upload", "10", "transform", "15", "retrieve", "50", "list", "25",
+                "transform-mode", "sync", "storage", "local"));
+        springArgs = new ArrayList<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            String key = arg.substring(2, eq);
+            if (options.containsKey(key)) {
+                options.put(key, arg.substring(eq + 1));
+            } else {
+                springArgs.add(arg);
+            }
+        }
+        for (String name : List.of("upload", "transform", "retrieve", "list")) {
+            stats.put(name, new LatencyStats(name));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTest test = new LoadTest(args);
+        Path uploadDir = Files.createTempDirectory("image-loadtest");
+        List<String> boot = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--app.upload-dir=" + uploadDir + "/",
+                "--spring.datasource.url=jdbc:h2:mem:loadtest;DB_CLOSE_DELAY=-1",
+                "--logging.level.com.example=WARN"));
+        S3StandIn s3 = null;
+        if ("s3".equals(test.options.get("storage"))) {
+            s3 = new S3StandIn("load-test", "load-test", "us-east-1");
+            s3.start();
+            boot.addAll(List.of(
+                    "--app.storage.type=s3",
+                    "--app.storage.s3.endpoint=" + s3.endpoint(),
+                    "--app.storage.s3.bucket=images",
+                    "--app.storage.s3.access-key=load-test",
+                    "--app.storage.s3.secret-key=load-test",
+                    "--app.storage.s3.part-size=128KB",
+                    "--app.storage.s3.staging-dir=" + uploadDir.resolve("staging")));
+        }
+        // The limits are sized for one interactive client; with them on this would mostly measure 429s
+        for (String operation : List.of("upload", "transform", "render")) {
+            String capacity = "--app.rate-limits." + operation + ".capacity=";
+            if (test.springArgs.stream().noneMatch(arg -> arg.startsWith(capacity))) {
+                boot.add(capacity + "0");
+            }
+        }
+        boot.addAll(test.springArgs);
+
+        ConfigurableApplicationContext context = SpringApplication.run(ImageServiceApplication.class,
+                boot.toArray(String[]::new));
+        int exitCode;
+        try {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            test.baseUrl = "http://localhost:" + port;
+            exitCode = test.run();
+        } finally {
+            context.close();
+            if (s3 != null) {
+                System.out.printf("S3 stand-in: %d requests, %d objects stored%n", s3.requestCount(), s3.objectCount());
+                s3.stop();
+            }
+            try (Stream<Path> files = Files.walk(uploadDir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+        System.exit(exitCode);
+    }
+
+    int run() throws Exception {
+        int users = intOption("users");
+        int threads = intOption("threads");
+        System.out.printf("Load test against %s: %d users, %d threads, %s%n", baseUrl, users, threads, options);
+
+        uploads.add(encode(generate(640, 480), "jpg"));
+        uploads.add(encode(generate(1600, 1200), "jpg"));
+        uploads.add(encode(generate(800, 600), "png"));
+
+        List<VirtualUser> population = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            VirtualUser user = signUp("load-user-" + i + "-" + UUID.randomUUID().toString().substring(0, 8));
+            upload(user, null);
+            population.add(user);
+        }
+
+        // Warm-up traffic is discarded so JIT and caches settle before measuring
+        drive(population, threads, intOption("warmup"), false);
+        long start = System.nanoTime();
+        drive(population, threads, intOption("duration"), true);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.println();
+        System.out.println(LatencyStats.header());
+        int serverErrors = 0;
+        int rateLimited = 0;
+        for (LatencyStats s : stats.values()) {
+            System.out.println(s.report(seconds));
+            serverErrors += s.serverErrors();
+            rateLimited += s.rateLimited();
+        }
+        System.out.printf("%nMeasured %.1f s%n", seconds);
+        if (rateLimited > 0) {
+            System.out.println(rateLimited + " requests rate limited (429), not included in the latencies");
+        }
+        if (serverErrors > 0) {
+            System.out.println(serverErrors + " server errors or failed requests");
+            return 1;
+        }
+        return 0;
+    }
+
+    private void drive(List<VirtualUser> population, int threads, int seconds, boolean record)
+            throws InterruptedException {
+        if (seconds <= 0) return;
+        int[] weights = {intOption("upload"), intOption("transform"), intOption("retrieve"), intOption("list")};
+        int totalWeight = weights[0] + weights[1] + weights[2] + weights[3];
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            pool.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                    VirtualUser user = population.get(random.nextInt(population.size()));
+                    int pick = random.nextInt(totalWeight);
+                    if ((pick -= weights[0]) < 0) {
+                        upload(user, record ? stats.get("upload") : null);
+                    } else if ((pick -= weights[1]) < 0) {
+                        transform(user, record ? stats.get("transform") : null);
+                    } else if ((pick -= weights[2]) < 0) {
+                        retrieve(user, record ? stats.get("retrieve") : null);
+                    } else {
+                        list(user, record ? stats.get("list") : null);
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(seconds + 60L, TimeUnit.SECONDS);
+    }
+
+    private VirtualUser signUp(String username) throws IOException, InterruptedException {
+        String credentials = mapper.writeValueAsString(Map.of("username", username, "password", PASSWORD));
+        send(HttpRequest.newBuilder(URI.create(baseUrl + "/auth/register"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(credentials)));
+        HttpResponse<byte[]> login = send(HttpRequest.newBuilder(URI.create(baseUrl + "/auth/login"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(credentials)));
+        return new VirtualUser(new String(login.body(), StandardCharsets.UTF_8), new CopyOnWriteArrayList<>());
+    }
+
+    /** Records into {@code s} unless it is null (warm-up and seeding). */
+    private void upload(VirtualUser user, LatencyStats s) {
+        int which = ThreadLocalRandom.current().nextInt(uploads.size());
+        String fileName = which == 2 ? "load.png" : "load.jpg";
+        String boundary = "----loadtest" + UUID.randomUUID();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.writeBytes(("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"" + fileName + "\"\r\n"
+                + "Content-Type: " + (which == 2 ? "image/png" : "image/jpeg") + "\r\n\r\n")
+                .getBytes(StandardCharsets.UTF_8));
+        body.writeBytes(uploads.get(which));
+        body.writeBytes(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+
+        HttpResponse<byte[]> response = call(authorized(user, "/images")
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray())), s);
+        if (response != null && response.statusCode() == 201) {
+            rememberImage(user, response);
+        }
+    }
+
+    private void transform(VirtualUser user, LatencyStats s) {
+        ImageRef image = pickImage(user);
+        if (image == null) return;
+        boolean sync = !"async".equals(options.get("transform-mode"));
+        try {
+            String spec = mapper.writeValueAsString(Map.of("transformations", randomSpec(image)));
+            HttpResponse<byte[]> response = call(authorized(user, "/images/" + image.id() + "/transform?sync=" + sync)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(spec)), s);
+            if (response != null && response.statusCode() == 200) {
+                rememberImage(user, response);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void retrieve(VirtualUser user, LatencyStats s) {
+        ImageRef image = pickImage(user);
+        if (image == null) return;
+        call(authorized(user, "/images/" + image.id()).GET(), s);
+    }
+
+    private void list(VirtualUser user, LatencyStats s) {
+        int page = ThreadLocalRandom.current().nextInt(Math.max(1, user.images().size() / 10 + 1));
+        call(authorized(user, "/images?page=" + page + "&limit=10").GET(), s);
+    }
+
+    private Map<String, Object> randomSpec(ImageRef image) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Map<String, Object> spec = new LinkedHashMap<>();
+        if (random.nextBoolean()) {
+            spec.put("resize", Map.of("width", 100 + random.nextInt(500), "height", 100 + random.nextInt(380)));
+        } else if (random.nextInt(3) == 0 && image.width() > 1 && image.height() > 1) {
+            // Sized from the picked image: earlier transform results can be much smaller than the seeds
+            int x = random.nextInt(image.width() / 2);
+            int y = random.nextInt(image.height() / 2);
+            spec.put("crop", Map.of("x", x, "y", y,
+                    "width", 1 + random.nextInt(image.width() - x), "height", 1 + random.nextInt(image.height() - y)));
+        }
+        if (random.nextInt(3) == 0) spec.put("rotate", 90 * random.nextInt(4));
+        if (random.nextInt(4) == 0) spec.put("flip", true);
+        if (random.nextInt(4) == 0) spec.put("mirror", true);
+        if (random.nextInt(3) == 0) {
+            spec.put("filters", Map.of("grayscale", random.nextBoolean(), "sepia", random.nextBoolean()));
+        }
+        if (random.nextInt(4) == 0) spec.put("watermark", "load test");
+        spec.put("format", random.nextInt(4) == 0 ? "png" : "jpg");
+        return spec;
+    }
+
+    private ImageRef pickImage(VirtualUser user) {
+        List<ImageRef> images = user.images();
+        return images.isEmpty() ? null : images.get(ThreadLocalRandom.current().nextInt(images.size()));
+    }
+
+    private void rememberImage(VirtualUser user, HttpResponse<byte[]> response) {
+        try {
+            JsonNode image = mapper.readTree(response.body());
+            if (image.hasNonNull("id")) {
+                user.images().add(new ImageRef(image.get("id").asLong(),
+                        image.path("width").asInt(0), image.path("height").asInt(0)));
+            }
+        } catch (IOException e) {
+            // Not a JSON image response; nothing to remember
+        }
+    }
+
+    private HttpRequest.Builder authorized(VirtualUser user, String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(Duration.ofSeconds(60))
+                .header("Authorization", "Bearer " + user.token());
+    }
+
+    private HttpResponse<byte[]> call(HttpRequest.Builder request, LatencyStats s) {
+        long start = System.nanoTime();
+        try {
+            HttpResponse<byte[]> response = client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+            if (s != null) s.record((System.nanoTime() - start) / 1000, response.statusCode());
+            return response;
+        } catch (IOException e) {
+            if (s != null) s.recordFailure();
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private HttpResponse<byte[]> send(HttpRequest.Builder request)
+            throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException(request.build().uri() + " returned " + response.statusCode() + ": "
+                    + new String(response.body(), StandardCharsets.UTF_8));
+        }
+        return response;
+    }
+
+    private int intOption(String name) {
+        return Integer.parseInt(options.get(name));
+    }
+
+    private static BufferedImage generate(int w, int h) {
+        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int r = x * 255 / w;
+                int g = y * 255 / h;
+                int b = (int) (128 + 100 * Math.sin((x + y) * 0.05)) + random.nextInt(20);
+                img.setRGB(x, y, (r << 16) | (g << 8) | Math.min(255, b));
+            }
+        }
+        return img;
+    }
+
+    private static byte[] encode(BufferedImage img, String format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(img, format, out);
+        return out.toByteArray();
+    }
+}
@@ -1,24 +1,69 @@
 package com.example.images.config;
 
+import com.example.images.util.TieredByteCache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
-import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.support.SimpleCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-import java.util.concurrent.TimeUnit;
+import java.time.Duration;
+import java.util.List;
 
 @Configuration
 @EnableCaching
 public class CacheConfig {
 
+    @Value("${app.image-cache.heap-bytes:67108864}")
+    private long imageHeapBytes;
+
+    @Value("${app.image-cache.off-heap-bytes:0}")
+    private long imageOffHeapBytes;
+
+    @Value("${app.image-cache.ttl:10m}")
+    private Duration imageTtl;
+
+    @Value("${app.upload-cache.max-entries:10000}")
+    private long uploadEntries;
+
+    @Value("${app.principal-cache.max-entries:10000}")
+    private long principalEntries;
+
+    @Value("${app.principal-cache.ttl:5m}")
+    private Duration principalTtl;
+
     @Bean
-    public CacheManager cacheManager() {
-        CaffeineCacheManager cacheManager = new CaffeineCacheManager("images", "transformedImages");
-        cacheManager.setCaffeine(Caffeine.newBuilder()
-                .expireAfterWrite(10, TimeUnit.MINUTES) // auto-expire
-                .maximumSize(500)); // limit entries
+    public CacheManager cacheManager(ObjectProvider<MeterRegistry> meterRegistry) {
+        // Small image payloads, weighed by byte size
+        TieredByteCache images = new TieredByteCache("images", imageHeapBytes, imageOffHeapBytes, imageTtl);
+
+        // public name -> stored file name and SHA-256 hex; small fixed-size values, so an entry cap is a byte cap
+        com.github.benmanes.caffeine.cache.Cache<Object, Object> uploads = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMinutes(10))
+                .maximumSize(uploadEntries)
+                .recordStats()
+                .build();
+
+        // username -> User, shared by the JWT filter and UserService; evicted when a user row changes
+        com.github.benmanes.caffeine.cache.Cache<Object, Object> principals = Caffeine.newBuilder()
+                .expireAfterWrite(principalTtl)
+                .maximumSize(principalEntries)
+                .recordStats()
+                .build();
+
+        // Boot binds the standard cache meters only for the Caffeine caches; the tiered one binds its own
+        meterRegistry.ifAvailable(registry -> images.bindTo(registry,
+                Tags.of("name", "images", "cache.manager", "cacheManager")));
+
+        SimpleCacheManager cacheManager = new SimpleCacheManager();
+        cacheManager.setCaches(List.of(images, new CaffeineCache("uploads", uploads),
+                new CaffeineCache("principals", principals)));
         return cacheManager;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,83 @@
+package com.example.images.config;
+
+import com.example.images.util.ParallelTiles;
+import com.example.images.util.PipelineMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+@EnableConfigurationProperties(RenditionProperties.class)
+public class ImageProcessingConfig {
+
+    @Value("${app.processing.parallelism:0}")
+    private int parallelism;
+
+    @Value("${app.processing.parallel-threshold-pixels:1000000}")
+    private long parallelThresholdPixels;
+
+    @Value("${app.transform-jobs.workers:4}")
+    private int jobWorkers;
+
+    @Value("${app.transform-jobs.queue-capacity:100}")
+    private int jobQueueCapacity;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @PostConstruct
+    void bindMetrics() {
+        if (meterRegistry != null) {
+            PipelineMetrics.bind(meterRegistry);
+        }
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public ForkJoinPool imageProcessingPool() {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(threads,
+                p -> {
+                    ForkJoinWorkerThread worker = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                    worker.setName("image-worker-" + worker.getPoolIndex());
+                    return worker;
+                },
+                null, false,
+                threads, threads, 1,
+                p -> true, // never grow past the configured size
+                60, TimeUnit.SECONDS);
+        ParallelTiles.configure(pool, parallelThresholdPixels);
+        return pool;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor renditionExecutor(RenditionProperties renditions) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(renditions.getWorkers());
+        executor.setMaxPoolSize(renditions.getWorkers());
+        executor.setQueueCapacity(renditions.getQueueCapacity()); // full queue: generated on first request instead
+        executor.setThreadNamePrefix("rendition-");
+        executor.initialize();
+        return executor;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor transformJobExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(jobWorkers);
+        executor.setMaxPoolSize(jobWorkers);
+        executor.setQueueCapacity(jobQueueCapacity); // full queue rejects, surfaced as 429
+        executor.setThreadNamePrefix("transform-job-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.images.config;
+
+import com.example.images.service.InMemoryRateLimitStore;
+import com.example.images.service.RateLimitStore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(RateLimitProperties.class)
+public class RateLimitConfig {
+
+    // Single-node default. A deployment with several nodes sets app.rate-limit-store to another value
+    // and provides the shared RateLimitStore bean for it
+    @Bean
+    @ConditionalOnProperty(name = "app.rate-limit-store", havingValue = "memory", matchIfMissing = true)
+    public RateLimitStore rateLimitStore(RateLimitProperties properties) {
+        return new InMemoryRateLimitStore(properties);
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.images.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-operation limits under {@code app.rate-limits.<operation>}. Operations without an entry,
+ * or with capacity 0, are not limited.
+ */
+@Data
+@ConfigurationProperties(prefix = "app")
+public class RateLimitProperties {
+
+    private Map<String, Limit> rateLimits = new HashMap<>();
+
+    @Data
+    public static class Limit {
+        // Requests allowed in a burst
+        private int capacity;
+        // Time for an exhausted allowance to refill completely; requests are spaced period / capacity apart
+        private Duration period = Duration.ofMinutes(1);
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.images.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Named renditions generated for every upload, under {@code app.renditions}.
+ * Each preset is "&lt;W&gt;x&lt;H&gt; &lt;format&gt;" (fit inside the box), "&lt;W&gt;w &lt;format&gt;" or
+ * "&lt;H&gt;h &lt;format&gt;" (scale to that width or height). Aspect ratio is kept and images are never enlarged.
+ */
+@Data
+@ConfigurationProperties(prefix = "app.renditions")
+public class RenditionProperties {
+
+    private Map<String, String> presets = new LinkedHashMap<>();
+
+    private int workers = 2;
+
+    private int queueCapacity = 200;
+}
@@ -0,0 +1,28 @@
+package com.example.images.config;
+
+import com.example.images.service.LocalStorageBackend;
+import com.example.images.service.S3StorageBackend;
+import com.example.images.service.StorageBackend;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+@Configuration
+@EnableConfigurationProperties(StorageProperties.class)
+public class StorageConfig {
+
+    @Bean
+    public StorageBackend storageBackend(StorageProperties properties,
+                                         @Value("${app.upload-dir}") String uploadDir) throws IOException {
+        return switch (properties.getType()) {
+            case "local" -> new LocalStorageBackend(Paths.get(uploadDir), properties.getLocal().getShardDepth());
+            case "s3" -> new S3StorageBackend(properties.getS3());
+            default -> throw new IllegalArgumentException("Unknown app.storage.type: " + properties.getType()
+                    + ", expected local or s3");
+        };
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.images.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Storage backend for originals and derivatives, under {@code app.storage}. type is "local"
+ * (sharded directories under app.upload-dir) or "s3" (any S3-compatible object store).
+ */
+@Data
+@ConfigurationProperties(prefix = "app.storage")
+public class StorageProperties {
+
+    private String type = "local";
+
+    private Local local = new Local();
+
+    private S3 s3 = new S3();
+
+    @Data
+    public static class Local {
+        // Levels of two-hex-digit directories; 2 gives 65536 directories
+        private int shardDepth = 2;
+    }
+
+    @Data
+    public static class S3 {
+        // e.g. https://s3.eu-west-1.amazonaws.com or http://localhost:9000; buckets are addressed path-style
+        private String endpoint;
+        private String region = "us-east-1";
+        private String bucket;
+        private String accessKey;
+        private String secretKey;
+        // Prepended to every key, e.g. "images/"
+        private String prefix = "";
+        // Objects larger than this are uploaded in parts of this size (S3 requires at least 5MB per part)
+        private DataSize partSize = DataSize.ofMegabytes(8);
+        private Duration timeout = Duration.ofSeconds(30);
+        // Local scratch space for staged uploads and downloads for processing; defaults to java.io.tmpdir
+        private String stagingDir;
+    }
+}
@@ -1,22 +0,0 @@
-package com.example.images.config;
-
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.context.annotation.Configuration;
-import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
-import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
-
-@Configuration
-public class WebConfig implements WebMvcConfigurer {
-
-    @Value("${app.upload-dir}")
-    private String uploadDir;
-
-    @Override
-    public void addResourceHandlers(ResourceHandlerRegistry registry) {
-        String location = uploadDir.endsWith("/") ? uploadDir : uploadDir + "/";
-        registry.addResourceHandler("/uploads/**")
-                .addResourceLocations("file:" + location)
-                .setCachePeriod(3600);
-    }
-}
-
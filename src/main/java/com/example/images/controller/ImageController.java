@@ -1,20 +1,39 @@
 package com.example.images.controller;
 
+import com.example.images.dto.BatchTransformRequest;
+import com.example.images.dto.BatchTransformResponse;
+import com.example.images.dto.CursorPage;
 import com.example.images.dto.ImageResponse;
+import com.example.images.dto.TransformJobResponse;
 import com.example.images.dto.TransformationRequest;
 import com.example.images.entity.Image;
+import com.example.images.service.BatchTransformService;
 import com.example.images.service.ImageService;
+import com.example.images.service.RenderService;
+import com.example.images.service.RenditionService;
+import com.example.images.service.TransformJobService;
+import com.example.images.util.FileResponses;
+import com.example.images.util.ImageProcessorUtil;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 import org.springframework.data.domain.Page;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+
 @RestController
 @RequestMapping("/images")
 @PreAuthorize("isAuthenticated()")  // All endpoints require auth
@@ -23,26 +42,112 @@ public class ImageController {
     @Autowired
     private ImageService imageService;
 
+    @Autowired
+    private TransformJobService transformJobService;
+
+    @Autowired
+    private BatchTransformService batchTransformService;
+
+    @Autowired
+    private RenditionService renditionService;
+
+    @Autowired
+    private RenderService renderService;
+
     @PostMapping
     public ResponseEntity<ImageResponse> uploadImage(@RequestParam("file") MultipartFile file) {
         Image image = imageService.uploadImage(file);
         return ResponseEntity.status(HttpStatus.CREATED).body(new ImageResponse(image));
     }
 
+    // Raw body upload: one pass from socket to file, no multipart spooling
+    @PostMapping(value = "/stream", consumes = {"image/*", MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public ResponseEntity<ImageResponse> uploadImageStream(@RequestParam(required = false) String name,
+                                                           HttpServletRequest request) throws IOException {
+        Image image = imageService.uploadImage(request.getInputStream(), request.getContentLengthLong(), name);
+        return ResponseEntity.status(HttpStatus.CREATED).body(new ImageResponse(image));
+    }
+
     @PostMapping("/{id}/transform")
-    public ResponseEntity<ImageResponse> transformImage(@PathVariable Long id,
-                                                        @Valid @RequestBody TransformationRequest request) {
-        Image transformed = imageService.transformImage(id, request);
-        return ResponseEntity.ok(new ImageResponse(transformed));
+    public ResponseEntity<?> transformImage(@PathVariable Long id,
+                                            @RequestParam(defaultValue = "false") boolean sync,
+                                            @Valid @RequestBody TransformationRequest request) {
+        if (sync) {
+            Image transformed = imageService.transformImage(id, request);
+            return ResponseEntity.ok(new ImageResponse(transformed));
+        }
+        TransformJobResponse job = transformJobService.submit(id, request);
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .header(HttpHeaders.LOCATION, "/images/jobs/" + job.getJobId())
+                .body(job);
+    }
+
+    @PostMapping("/batch/transform")
+    public ResponseEntity<BatchTransformResponse> batchTransform(@Valid @RequestBody BatchTransformRequest request) {
+        return ResponseEntity.ok(batchTransformService.transform(request));
+    }
+
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<TransformJobResponse> getTransformJob(@PathVariable String jobId) {
+        return ResponseEntity.ok(transformJobService.getJob(jobId));
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<byte[]> retrieveImage(@PathVariable Long id) {
-        byte[] imageBytes = imageService.retrieveImage(id);
+    public ResponseEntity<Resource> retrieveImage(@PathVariable Long id, HttpServletRequest request,
+                                                  WebRequest webRequest) throws IOException {
+        return serve(imageService.getImage(id), request, webRequest);
+    }
+
+    @GetMapping("/{id}/renditions/{preset}")
+    public ResponseEntity<Resource> retrieveRendition(@PathVariable Long id, @PathVariable String preset,
+                                                      HttpServletRequest request, WebRequest webRequest)
+            throws IOException {
+        return serve(renditionService.getRendition(id, preset), request, webRequest);
+    }
+
+    @GetMapping("/{id}/render")
+    public ResponseEntity<Resource> render(@PathVariable Long id,
+                                           @RequestParam(required = false) Integer w,
+                                           @RequestParam(required = false) Integer h,
+                                           @RequestParam(required = false) String fit,
+                                           @RequestParam(required = false) String fmt,
+                                           @RequestParam(required = false) Integer q,
+                                           HttpServletRequest request, WebRequest webRequest) throws IOException {
+        RenderService.RenderRequest render = renderService.prepare(id, w, h, fit, fmt, q);
+        // The key covers the source bytes and every parameter, so a match needs no render
+        String eTag = "\"" + render.key() + "\"";
+        if (webRequest.checkNotModified(eTag)) {
+            return null;
+        }
+
         HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.IMAGE_JPEG);  // Default; detect actual type in prod
-        headers.setContentLength(imageBytes.length);
-        return new ResponseEntity<>(imageBytes, headers, HttpStatus.OK);
+        headers.setContentType(FileResponses.mediaType(ImageProcessorUtil.mimeTypeForFormat(render.format())));
+        headers.setETag(eTag);
+        headers.setCacheControl(CacheControl.maxAge(365, TimeUnit.DAYS).cachePrivate().immutable());
+        return FileResponses.serve(request, new FileSystemResource(renderService.render(render)), headers);
+    }
+
+    private ResponseEntity<Resource> serve(Image image, HttpServletRequest request, WebRequest webRequest)
+            throws IOException {
+        String eTag = image.getContentHash() != null ? "\"" + image.getContentHash() + "\"" : null;
+        long lastModified = image.getUploadDate().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        if (webRequest.checkNotModified(eTag, lastModified)) {
+            return null; // 304 already written, file untouched
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(FileResponses.mediaType(image.getMimeType()));
+        if (eTag != null) {
+            headers.setETag(eTag);
+        }
+        headers.setLastModified(lastModified);
+        return FileResponses.serve(request, imageService.openImage(image), headers);
+    }
+
+    @GetMapping("/scroll")
+    public ResponseEntity<CursorPage<ImageResponse>> scrollImages(@RequestParam(required = false) String cursor,
+                                                                  @RequestParam(defaultValue = "10") int limit) {
+        return ResponseEntity.ok(imageService.listImagesAfter(cursor, limit));
     }
 
     @GetMapping
@@ -0,0 +1,57 @@
+package com.example.images.controller;
+
+import com.example.images.dto.PublicFile;
+import com.example.images.exception.CustomException;
+import com.example.images.service.ImageService;
+import com.example.images.util.FileResponses;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Public file URLs ({@code /uploads/<publicName>}) recorded on image rows, served from whichever
+ * storage backend is configured. Each row has its own random name; the content-addressed storage
+ * keys are never accepted here, so nobody can test whether some known content was uploaded.
+ */
+@RestController
+@RequestMapping("/uploads")
+public class UploadsController {
+
+    @Autowired
+    private ImageService imageService;
+
+    @GetMapping("/{name:.+}")
+    public ResponseEntity<Resource> getUpload(@PathVariable String name,
+                                              HttpServletRequest request, WebRequest webRequest) throws IOException {
+        PublicFile file = imageService.findPublicFile(name);
+        if (file == null) {
+            throw new CustomException("File not found", 404);
+        }
+        // Strong ETag from the stored content hash, so revalidation never touches storage
+        String eTag = file.getContentHash() != null ? "\"" + file.getContentHash() + "\"" : null;
+        if (eTag != null && webRequest.checkNotModified(eTag)) {
+            return null;
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaTypeFactory.getMediaType(file.getFileName()).orElse(MediaType.APPLICATION_OCTET_STREAM));
+        if (eTag != null) {
+            headers.setETag(eTag);
+        }
+        headers.setCacheControl(CacheControl.maxAge(1, TimeUnit.HOURS));
+        return FileResponses.serve(request, imageService.openStoredFile(file.getFileName()), headers);
+    }
+}
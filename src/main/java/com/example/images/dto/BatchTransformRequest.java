@@ -0,0 +1,19 @@
+package com.example.images.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Every spec is applied to every image: one spec to many images, many specs to one image, or both.
+ */
+@Data
+public class BatchTransformRequest {
+
+    @NotEmpty
+    private List<Long> imageIds;
+
+    @NotEmpty
+    private List<TransformationRequest.Transformations> transformations;
+}
@@ -0,0 +1,31 @@
+package com.example.images.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchTransformResponse {
+
+    // One per (image, spec) pair, image-major in request order
+    private List<Item> results;
+
+    @Data
+    @NoArgsConstructor
+    public static class Item {
+        private Long imageId;
+        private int transformationIndex;
+        private int status;
+        private ImageResponse result;
+        private String error;
+
+        public Item(Long imageId, int transformationIndex) {
+            this.imageId = imageId;
+            this.transformationIndex = transformationIndex;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.images.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPage<T> {
+    private List<T> content;
+    // Opaque; pass back as ?cursor= for the next page. Null on the last page.
+    private String nextCursor;
+}
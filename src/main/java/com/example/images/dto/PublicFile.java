@@ -0,0 +1,17 @@
+package com.example.images.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The stored file behind a public /uploads name.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PublicFile {
+    // Storage key; content-addressed, so never exposed as a URL
+    private String fileName;
+    private String contentHash;
+}
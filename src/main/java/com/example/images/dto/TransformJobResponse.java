@@ -0,0 +1,20 @@
+package com.example.images.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TransformJobResponse {
+    private String jobId;
+    private String status;
+    private Long sourceImageId;
+    private ImageResponse result;
+    private String error;
+    private LocalDateTime submittedAt;
+    private LocalDateTime completedAt;
+}
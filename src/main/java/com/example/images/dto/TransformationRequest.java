@@ -19,6 +19,10 @@ public class TransformationRequest {
         private Filters filters;
         private String watermark;
         private String format;
+        // Encoder options; formats without them ignore them
+        private Integer quality;            // 1-100, lossy formats (jpg, webp)
+        private Boolean progressive;        // progressive JPEG, interlaced PNG/GIF
+        private Integer compressionLevel;   // 0-9, PNG deflate level
     }
 
     @Data
@@ -0,0 +1,36 @@
+package com.example.images.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * A stored file, keyed by the SHA-256 of its bytes. Image rows with the same content share one
+ * blob; refCount is the number of rows pointing at it, and the file is deleted when it drops to 0.
+ */
+@Entity
+@Table(name = "blobs")
+@Data
+public class Blob {
+
+    @Id
+    @Column(length = 64)
+    private String hash;
+
+    @Column(nullable = false)
+    private String fileName;
+
+    @Column(nullable = false)
+    private long size;
+
+    @Column(nullable = false)
+    private int refCount;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    public Blob() {
+        this.createdAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.images.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * An entry of the transform cache: the blob holding the result of one spec applied to one source.
+ * Each entry holds its own reference on the blob, independent of the image rows that use it.
+ */
+@Entity
+@Table(name = "derivative_cache")
+@Data
+public class CachedDerivative {
+
+    // <source key>:<spec hash>
+    @Id
+    @Column(length = 160)
+    private String cacheKey;
+
+    @Column(nullable = false, length = 64)
+    private String contentHash;
+
+    @Column(nullable = false)
+    private String fileName;
+
+    @Column(nullable = false)
+    private String originalName;
+
+    @Column(nullable = false)
+    private String mimeType;
+
+    @Column(nullable = false)
+    private long size;
+
+    @Column
+    private Integer width;
+
+    @Column
+    private Integer height;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    public CachedDerivative() {
+        this.createdAt = LocalDateTime.now();
+    }
+}
@@ -2,16 +2,28 @@ package com.example.images.entity;
 
 import jakarta.persistence.*;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "images")
+@Table(name = "images", indexes = {
+        // Serves keyset listing: WHERE user_id = ? AND (upload_date, id) < (?, ?) ORDER BY upload_date DESC, id DESC
+        @Index(name = "idx_images_user_upload_date_id", columnList = "user_id, upload_date, id")
+}, uniqueConstraints = {
+        @UniqueConstraint(name = "uk_images_parent_preset", columnNames = {"parent_id", "preset"})
+})
 @Data
 public class Image {
 
+    // Sequence ids (pre-allocated in blocks) let Hibernate batch inserts; IDENTITY forces one round trip per row.
+    // The schema is created empty on each start of the in-memory H2 database (the only one supported), so the
+    // sequence always starts above every id. A persistent database with rows from the old IDENTITY column would
+    // need images_seq created starting after max(id) first.
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "images_seq")
+    @SequenceGenerator(name = "images_seq", sequenceName = "images_seq", initialValue = 1, allocationSize = 50)
     private Long id;
 
     @Column(nullable = false)
@@ -23,6 +35,11 @@ public class Image {
     @Column(nullable = false)
     private String url;
 
+    // Random name in the public /uploads URL. Files are stored under their content hash, which would
+    // let anyone probe for known content; null on rows from before these names were introduced
+    @Column(unique = true, length = 48)
+    private String publicName;
+
     @Column
     private Long size;
 
@@ -35,6 +52,10 @@ public class Image {
     @Column(nullable = false)
     private String mimeType;
 
+    // SHA-256 of the stored file, served as the strong ETag
+    @Column(length = 64)
+    private String contentHash;
+
     @Column(nullable = false)
     private LocalDateTime uploadDate;
 
@@ -42,6 +63,16 @@ public class Image {
     @JoinColumn(name = "user_id", nullable = false)
     private User user;
 
+    // Set on renditions: the original they were generated from and the preset name
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "parent_id")
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private Image parent;
+
+    @Column(length = 32)
+    private String preset;
+
     // Constructors
     public Image() {
         this.uploadDate = LocalDateTime.now();
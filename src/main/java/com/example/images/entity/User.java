@@ -1,5 +1,6 @@
 package com.example.images.entity;
 
+import com.example.images.security.PrincipalCacheListener;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -11,6 +12,7 @@ import java.util.Collection;
 import java.util.List;
 
 @Entity
+@EntityListeners(PrincipalCacheListener.class)
 @Table(name = "users")
 @Data
 @AllArgsConstructor
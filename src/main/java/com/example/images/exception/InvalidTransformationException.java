@@ -0,0 +1,14 @@
+package com.example.images.exception;
+
+import java.io.IOException;
+
+/**
+ * A transformation spec that cannot be applied to its image, such as a crop outside the image
+ * bounds. The client's fault, unlike the other I/O failures of a render.
+ */
+public class InvalidTransformationException extends IOException {
+
+    public InvalidTransformationException(String message) {
+        super(message);
+    }
+}
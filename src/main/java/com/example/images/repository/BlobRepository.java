@@ -0,0 +1,30 @@
+package com.example.images.repository;
+
+import com.example.images.entity.Blob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+@Repository
+public interface BlobRepository extends JpaRepository<Blob, String> {
+
+    // In-place increment, so concurrent references never overwrite each other's count
+    @Modifying
+    @Transactional
+    @Query("update Blob b set b.refCount = b.refCount + :delta where b.hash = :hash")
+    int adjustRefCount(@Param("hash") String hash, @Param("delta") int delta);
+
+    @Modifying
+    @Transactional
+    @Query("delete from Blob b where b.hash = :hash and b.refCount <= 0")
+    int deleteIfUnreferenced(@Param("hash") String hash);
+
+    // Scalar, so it always reads the row rather than an entity cached earlier in the request
+    @Query("select b.fileName from Blob b where b.hash = :hash")
+    Optional<String> findFileName(@Param("hash") String hash);
+}
@@ -0,0 +1,23 @@
+package com.example.images.repository;
+
+import com.example.images.entity.CachedDerivative;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+public interface CachedDerivativeRepository extends JpaRepository<CachedDerivative, String> {
+
+    List<CachedDerivative> findAllByOrderByCreatedAtAsc();
+
+    // Conditional on the hash, so a late removal never deletes the row of a newer entry for the key
+    @Modifying
+    @Transactional
+    @Query("delete from CachedDerivative d where d.cacheKey = :cacheKey and d.contentHash = :contentHash")
+    int deleteEntry(@Param("cacheKey") String cacheKey, @Param("contentHash") String contentHash);
+}
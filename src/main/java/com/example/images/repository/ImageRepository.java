@@ -1,13 +1,48 @@
 package com.example.images.repository;
 
+import com.example.images.dto.ImageResponse;
+import com.example.images.dto.PublicFile;
 import com.example.images.entity.Image;
 import com.example.images.entity.User;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface ImageRepository extends JpaRepository<Image, Long> {
-    Page<Image> findByUser (User user, Pageable pageable);
+    // Listings show originals and transforms; renditions are reached through their parent
+    Page<Image> findByUserAndParentIsNull(User user, Pageable pageable);
+
+    Optional<Image> findByParentIdAndPreset(Long parentId, String preset);
+
+    List<Image> findByParentId(Long parentId);
+
+    Image findFirstByUserAndFileNameAndParentIsNull(User user, String fileName);
+
+    @Query("select new com.example.images.dto.ImageResponse(i.id, i.fileName, i.originalName, i.url, i.size, "
+            + "i.width, i.height, i.mimeType, i.uploadDate) "
+            + "from Image i where i.user.id = :userId and i.parent is null "
+            + "order by i.uploadDate desc, i.id desc")
+    List<ImageResponse> findNewestByUserId(@Param("userId") Long userId, Limit limit);
+
+    @Query("select new com.example.images.dto.ImageResponse(i.id, i.fileName, i.originalName, i.url, i.size, "
+            + "i.width, i.height, i.mimeType, i.uploadDate) "
+            + "from Image i where i.user.id = :userId and i.parent is null "
+            + "and (i.uploadDate < :uploadDate or (i.uploadDate = :uploadDate and i.id < :id)) "
+            + "order by i.uploadDate desc, i.id desc")
+    List<ImageResponse> findByUserIdBefore(@Param("userId") Long userId, @Param("uploadDate") LocalDateTime uploadDate,
+                                           @Param("id") Long id, Limit limit);
+
+    // Rows from before public names existed are still served under their file name
+    @Query("select new com.example.images.dto.PublicFile(i.fileName, i.contentHash) from Image i "
+            + "where i.publicName = :name or (i.publicName is null and i.fileName = :name)")
+    List<PublicFile> findPublicFiles(@Param("name") String name, Limit limit);
 }
@@ -0,0 +1,31 @@
+package com.example.images.security;
+
+import com.example.images.entity.User;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+/**
+ * Drops a user's cached principal whenever the row is written, whichever code path wrote it.
+ * Hibernate obtains this listener from the Spring context, so it can be injected.
+ */
+@Component
+public class PrincipalCacheListener {
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    void evict(User user) {
+        Cache cache = cacheManager.getCache("principals");
+        if (cache != null && user.getUsername() != null) {
+            cache.evict(user.getUsername());
+        }
+    }
+}
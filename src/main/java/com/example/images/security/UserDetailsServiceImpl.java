@@ -3,6 +3,7 @@ package com.example.images.security;
 import com.example.images.entity.User;
 import com.example.images.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
@@ -15,7 +16,12 @@ public class UserDetailsServiceImpl implements UserDetailsService {
     @Autowired
     private UserRepository userRepository;
 
+    /**
+     * Cached in "principals" so authenticated requests do not query the users table;
+     * {@link PrincipalCacheListener} evicts entries when the row changes.
+     */
     @Override
+    @Cacheable(value = "principals", key = "#username")
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new UsernameNotFoundException(STR."User  not found: \{username}"));
@@ -0,0 +1,221 @@
+package com.example.images.service;
+
+import com.example.images.dto.BatchTransformRequest;
+import com.example.images.dto.BatchTransformResponse;
+import com.example.images.dto.ImageResponse;
+import com.example.images.dto.TransformationRequest;
+import com.example.images.entity.Image;
+import com.example.images.entity.User;
+import com.example.images.exception.CustomException;
+import com.example.images.exception.InvalidTransformationException;
+import com.example.images.repository.ImageRepository;
+import com.example.images.util.DecodedSource;
+import com.example.images.util.ImageProcessorUtil;
+import com.example.images.util.PipelineMetrics;
+import com.example.images.util.TransformationKeys;
+import com.example.images.util.TransformedImage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Applies a set of specs to a set of images. Each original is decoded once and its renditions are
+ * rendered in parallel from the shared pixels; originals are processed one at a time so only one
+ * decoded source is held at once. All new rows are inserted in a single batch at the end.
+ */
+@Service
+public class BatchTransformService {
+
+    @Autowired
+    private ImageRepository imageRepository;
+
+    @Autowired
+    private ImageService imageService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private DerivativeCache derivativeCache;
+
+    @Autowired
+    private RateLimiter rateLimiter;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    @Autowired
+    private ForkJoinPool imageProcessingPool;
+
+    @Autowired
+    private StorageBackend storage;
+
+    @Value("${app.batch.max-items:50}")
+    private int maxItems;
+
+    // Renditions rendered but not yet saved, with the items waiting on them
+    private record Rendered(String cacheKey, Image image, List<BatchTransformResponse.Item> items) {
+    }
+
+    public BatchTransformResponse transform(BatchTransformRequest request) {
+        List<Long> imageIds = request.getImageIds();
+        List<TransformationRequest.Transformations> specs = request.getTransformations();
+        if ((long) imageIds.size() * specs.size() > maxItems) {
+            throw new CustomException("Batch too large: at most " + maxItems + " image/transformation pairs");
+        }
+        specs.forEach(ImageService::checkOutput);
+
+        User user = userService.getCurrentUser();
+        Map<Long, Image> originals = imageRepository.findAllById(imageIds).stream()
+                .collect(Collectors.toMap(Image::getId, Function.identity()));
+
+        // A repeated id shares the first occurrence's results instead of being decoded again
+        List<BatchTransformResponse.Item> items = new ArrayList<>();
+        Map<Long, List<BatchTransformResponse.Item>> itemsByImage = new LinkedHashMap<>();
+        for (Long imageId : imageIds) {
+            for (int i = 0; i < specs.size(); i++) {
+                BatchTransformResponse.Item item = new BatchTransformResponse.Item(imageId, i);
+                items.add(item);
+                itemsByImage.computeIfAbsent(imageId, id -> new ArrayList<>()).add(item);
+            }
+        }
+
+        List<Rendered> rendered = new ArrayList<>();
+        itemsByImage.forEach((imageId, forImage) -> {
+            Image original = originals.get(imageId);
+            if (original == null) {
+                forImage.forEach(item -> fail(item, 404, "Image not found"));
+            } else if (!original.getUser().getId().equals(user.getId())) {
+                forImage.forEach(item -> fail(item, 403, "Unauthorized access to image"));
+            } else {
+                renderAll(original, specs, forImage, user, rendered);
+            }
+        });
+
+        // One transaction; with JDBC batching and sequence ids this is a single batched insert
+        List<Image> toSave = rendered.stream().map(Rendered::image).toList();
+        List<Image> saved;
+        try {
+            saved = imageRepository.saveAll(toSave);
+        } catch (RuntimeException e) {
+            toSave.forEach(image -> blobStore.release(image.getContentHash()));
+            throw e;
+        }
+        for (int i = 0; i < saved.size(); i++) {
+            Rendered r = rendered.get(i);
+            Image image = saved.get(i);
+            derivativeCache.put(r.cacheKey(), image);
+            r.items().forEach(item -> succeed(item, image));
+        }
+        return new BatchTransformResponse(items);
+    }
+
+    private void renderAll(Image original, List<TransformationRequest.Transformations> specs,
+                           List<BatchTransformResponse.Item> items, User user, List<Rendered> rendered) {
+        String source = ImageService.sourceKey(original);
+
+        // Identical specs, in one request or from a repeated image id, are rendered once
+        Map<String, List<BatchTransformResponse.Item>> bySpec = new LinkedHashMap<>();
+        Map<String, TransformationRequest.Transformations> specsByHash = new LinkedHashMap<>();
+        for (BatchTransformResponse.Item item : items) {
+            TransformationRequest.Transformations spec = specs.get(item.getTransformationIndex());
+            String specHash = TransformationKeys.hash(source, spec);
+            bySpec.computeIfAbsent(specHash, h -> new ArrayList<>()).add(item);
+            specsByHash.putIfAbsent(specHash, spec);
+        }
+
+        Map<String, TransformationRequest.Transformations> pending = new LinkedHashMap<>();
+        bySpec.forEach((specHash, waiting) -> {
+            Image cached = derivativeCache.get(DerivativeCache.key(source, specHash));
+            PipelineMetrics.cacheLookup("derivatives", cached != null);
+            try {
+                if (cached != null) {
+                    Image owned = imageService.ownedBy(cached, user);
+                    waiting.forEach(item -> succeed(item, owned));
+                } else {
+                    rateLimiter.acquire(RateLimiter.TRANSFORM, user.getId());
+                    pending.put(specHash, specsByHash.get(specHash));
+                }
+            } catch (CustomException e) {
+                waiting.forEach(item -> fail(item, e.getStatusCode(), e.getMessage()));
+            }
+        });
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        DecodedSource decoded;
+        try {
+            List<TransformationRequest.Transformations> toDecode = List.copyOf(pending.values());
+            decoded = storage.withLocalFile(original.getFileName(),
+                    path -> ImageProcessorUtil.decodeShared(path, toDecode));
+        } catch (IOException e) {
+            pending.keySet().forEach(specHash -> failRender(bySpec.get(specHash), e));
+            return;
+        }
+
+        // Only pixel work runs on the pool; blob store and S3 writes stay on this thread
+        Map<String, Path> targets = new LinkedHashMap<>();
+        Map<String, CompletableFuture<TransformedImage>> futures = new LinkedHashMap<>();
+        pending.forEach((specHash, spec) -> {
+            Path target;
+            try {
+                target = storage.createStagingFile("." + ImageProcessorUtil.outputFormat(spec));
+            } catch (IOException e) {
+                failRender(bySpec.get(specHash), e);
+                return;
+            }
+            targets.put(specHash, target);
+            futures.put(specHash, CompletableFuture.supplyAsync(() -> {
+                try {
+                    return ImageProcessorUtil.applyTransformations(decoded, spec, target);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, imageProcessingPool));
+        });
+
+        futures.forEach((specHash, future) -> {
+            List<BatchTransformResponse.Item> waiting = bySpec.get(specHash);
+            try {
+                Image image = imageService.newDerivative(original, future.join(), user);
+                rendered.add(new Rendered(DerivativeCache.key(source, specHash), image, waiting));
+            } catch (CompletionException e) {
+                failRender(waiting, e.getCause() instanceof UncheckedIOException io ? io.getCause() : e.getCause());
+            } catch (IOException | RuntimeException e) {
+                failRender(waiting, e);
+            } finally {
+                ImageService.deleteQuietly(targets.get(specHash));
+            }
+        });
+    }
+
+    // A spec that does not fit its image is the client's error; anything else failed on our side
+    private static void failRender(List<BatchTransformResponse.Item> items, Throwable cause) {
+        int status = cause instanceof InvalidTransformationException ? 400 : 500;
+        items.forEach(item -> fail(item, status, "Failed to transform image: " + cause.getMessage()));
+    }
+
+    private static void succeed(BatchTransformResponse.Item item, Image image) {
+        item.setStatus(200);
+        item.setResult(new ImageResponse(image));
+    }
+
+    private static void fail(BatchTransformResponse.Item item, int status, String message) {
+        item.setStatus(status);
+        item.setError(message);
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.images.service;
+
+import com.example.images.entity.Blob;
+import com.example.images.repository.BlobRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Content-addressed files on the {@link StorageBackend}. Each distinct content is kept once as
+ * {@code <sha256>.<ext>} and reference counted; image rows with the same bytes share the file.
+ * <p>
+ * Changes to one hash are serialized by a striped lock, so a release that drops the last
+ * reference cannot delete a file another thread is just adding. The lock is per process; the
+ * counts themselves are updated in place in the database.
+ */
+@Service
+public class BlobStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlobStore.class);
+
+    private static final int LOCK_STRIPES = 64;
+
+    @Autowired
+    private BlobRepository blobRepository;
+
+    @Autowired
+    private StorageBackend storage;
+
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    public BlobStore() {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Takes a reference to the blob holding {@code file}'s bytes (a staged local file). A new blob
+     * is stored under its content address; for content already stored the file is deleted.
+     * Returns the storage key, which is also the file name recorded on the row.
+     */
+    public String add(Path file, String hash, String extension) throws IOException {
+        synchronized (lockFor(hash)) {
+            String stored = blobRepository.findFileName(hash).orElse(null);
+            if (stored != null && blobRepository.adjustRefCount(hash, 1) == 1) {
+                if (storage.exists(stored)) {
+                    Files.deleteIfExists(file);
+                } else {
+                    // Row outlived its file (removed by hand); these bytes restore it
+                    storage.put(stored, file);
+                }
+                return stored;
+            }
+
+            String fileName = extension != null && !extension.isEmpty() ? hash + "." + extension : hash;
+            long size = Files.size(file);
+            storage.put(fileName, file);
+            Blob blob = new Blob();
+            blob.setHash(hash);
+            blob.setFileName(fileName);
+            blob.setSize(size);
+            blob.setRefCount(1);
+            blobRepository.save(blob);
+            return fileName;
+        }
+    }
+
+    /**
+     * Takes another reference to a stored blob, for a new row sharing its file. False when the
+     * blob is gone (its last reference was released meanwhile).
+     */
+    public boolean retain(String hash) {
+        synchronized (lockFor(hash)) {
+            return blobRepository.adjustRefCount(hash, 1) == 1;
+        }
+    }
+
+    /**
+     * Drops a reference; the last one deletes the blob and its file.
+     */
+    public void release(String hash) {
+        if (hash == null) return;
+        synchronized (lockFor(hash)) {
+            String fileName = blobRepository.findFileName(hash).orElse(null);
+            if (fileName == null) {
+                return; // not a blob (stored before deduplication)
+            }
+            blobRepository.adjustRefCount(hash, -1);
+            if (blobRepository.deleteIfUnreferenced(hash) == 1) {
+                try {
+                    storage.delete(fileName);
+                } catch (IOException e) {
+                    logger.warn("Failed to delete blob file {}: {}", fileName, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private Object lockFor(String hash) {
+        return locks[Math.floorMod(hash.hashCode(), LOCK_STRIPES)];
+    }
+}
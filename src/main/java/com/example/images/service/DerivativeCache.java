@@ -0,0 +1,165 @@
+package com.example.images.service;
+
+import com.example.images.entity.CachedDerivative;
+import com.example.images.entity.Image;
+import com.example.images.repository.CachedDerivativeRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Content-addressed cache of transform results, keyed by source image and canonical spec hash.
+ * <p>
+ * An entry maps the key to a blob, not to anyone's image row: it holds a blob reference of its
+ * own, and eviction only drops the mapping and that reference. Image rows created from a hit keep
+ * their own references, so their files stay until the rows are deleted. Entries are weighed by file
+ * size, so the configured budget bounds the disk the cache keeps alive on its own.
+ * <p>
+ * Entries are also stored in the derivative_cache table, in the same database as the blob counts
+ * they hold, and the cache is reloaded from it on startup.
+ */
+@Component
+public class DerivativeCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(DerivativeCache.class);
+
+    // Charged per entry on top of the file size so that many tiny derivatives still bound heap use
+    private static final int ENTRY_OVERHEAD_BYTES = 1024;
+
+    @Autowired
+    private CachedDerivativeRepository cachedDerivativeRepository;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private StorageBackend storage;
+
+    @Value("${app.transform-cache.max-disk-bytes:1073741824}")
+    private long maxDiskBytes;
+
+    private Cache<String, CachedDerivative> cache;
+
+    @PostConstruct
+    void init() {
+        cache = Caffeine.newBuilder()
+                .maximumWeight(maxDiskBytes)
+                .weigher((String key, CachedDerivative e) -> (int) Math.min(Integer.MAX_VALUE, e.getSize() + ENTRY_OVERHEAD_BYTES))
+                .removalListener((String key, CachedDerivative e, RemovalCause cause) -> {
+                    if (e != null) {
+                        dropEntry(e, cause);
+                    }
+                })
+                .recordStats()
+                .build();
+        if (meterRegistry != null) {
+            // Not in the CacheManager, so bound here with the tags Boot gives the managed caches
+            CaffeineCacheMetrics.monitor(meterRegistry, cache, "transformDerivatives",
+                    "name", "transformDerivatives", "cache.manager", "cacheManager");
+        }
+
+        // The references these entries hold are already counted; entries over the budget are evicted as they load
+        long loaded = 0;
+        for (CachedDerivative entry : cachedDerivativeRepository.findAllByOrderByCreatedAtAsc()) {
+            cache.put(entry.getCacheKey(), entry);
+            loaded++;
+        }
+        if (loaded > 0) {
+            logger.info("Loaded {} transform cache entries", loaded);
+        }
+    }
+
+    public static String key(String source, String specHash) {
+        return source + ":" + specHash;
+    }
+
+    /**
+     * Returns an unsaved row describing the cached derivative (no owner or URL), or null on a miss.
+     * Callers give it an owner with {@link ImageService#ownedBy}. Entries whose file has
+     * disappeared are dropped and reported as a miss.
+     */
+    public Image get(String key) {
+        CachedDerivative entry = cache.getIfPresent(key);
+        if (entry == null) return null;
+
+        if (!storedFileExists(entry.getFileName())) {
+            cache.asMap().remove(key, entry);
+            return null;
+        }
+        Image image = new Image();
+        image.setOriginalName(entry.getOriginalName());
+        image.setFileName(entry.getFileName());
+        image.setMimeType(entry.getMimeType());
+        image.setContentHash(entry.getContentHash());
+        image.setSize(entry.getSize());
+        image.setWidth(entry.getWidth());
+        image.setHeight(entry.getHeight());
+        return image;
+    }
+
+    /**
+     * Caches a saved derivative's blob under {@code key}, taking a reference of its own. Rows
+     * without a blob (stored before deduplication) are not cached.
+     */
+    public void put(String key, Image derivative) {
+        if (derivative.getContentHash() == null || !blobStore.retain(derivative.getContentHash())) {
+            return;
+        }
+        CachedDerivative entry = new CachedDerivative();
+        entry.setCacheKey(key);
+        entry.setContentHash(derivative.getContentHash());
+        entry.setFileName(derivative.getFileName());
+        entry.setOriginalName(derivative.getOriginalName());
+        entry.setMimeType(derivative.getMimeType());
+        entry.setSize(derivative.getSize() != null ? derivative.getSize() : 0L);
+        entry.setWidth(derivative.getWidth());
+        entry.setHeight(derivative.getHeight());
+        try {
+            cachedDerivativeRepository.save(entry);
+        } catch (RuntimeException e) {
+            blobStore.release(entry.getContentHash());
+            logger.warn("Failed to cache derivative {}: {}", entry.getFileName(), e.getMessage());
+            return;
+        }
+        cache.put(key, entry);
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    private boolean storedFileExists(String fileName) {
+        try {
+            return storage.exists(fileName);
+        } catch (IOException e) {
+            logger.warn("Failed to check derivative {}: {}", fileName, e.getMessage());
+            return false;
+        }
+    }
+
+    private void dropEntry(CachedDerivative e, RemovalCause cause) {
+        try {
+            // A replaced entry's row was already overwritten by its successor
+            if (cause != RemovalCause.REPLACED) {
+                cachedDerivativeRepository.deleteEntry(e.getCacheKey(), e.getContentHash());
+            }
+            blobStore.release(e.getContentHash()); // the file goes only if no image row uses it either
+        } catch (RuntimeException ex) {
+            logger.warn("Failed to drop transform cache entry {}: {}", e.getFileName(), ex.getMessage());
+        }
+    }
+}
@@ -1,27 +1,52 @@
 package com.example.images.service;
 
+import com.example.images.dto.CursorPage;
 import com.example.images.dto.ImageResponse;
+import com.example.images.dto.PublicFile;
 import com.example.images.dto.TransformationRequest;
 import com.example.images.entity.Image;
 import com.example.images.entity.User;
 import com.example.images.exception.CustomException;
 import com.example.images.repository.ImageRepository;
+import com.example.images.util.ContentHash;
+import com.example.images.util.ImageEncoders;
+import com.example.images.util.ImageMetadata;
 import com.example.images.util.ImageProcessorUtil;
+import com.example.images.util.ImageSniffer;
+import com.example.images.util.PipelineMetrics;
+import com.example.images.util.SingleFlight;
+import com.example.images.util.TransformationKeys;
+import com.example.images.util.TransformedImage;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class ImageService {
@@ -32,98 +57,375 @@ public class ImageService {
     @Autowired
     private UserService userService;
 
-    @Value("${app.upload-dir}")
-    private String uploadDir;
+    @Autowired
+    private DerivativeCache derivativeCache;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    @Autowired
+    private StorageBackend storage;
+
+    @Autowired
+    private CacheManager cacheManager;
 
     @Value("${app.max-file-size}")
     private long maxFileSize;
 
-    private final ConcurrentHashMap<String, Integer> rateLimiter = new ConcurrentHashMap<>();
+    @Value("${app.image-cache.max-entry-bytes:65536}")
+    private long maxCachedImageBytes;
+
+    @Autowired
+    private RateLimiter rateLimiter;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    private static final int MAX_PAGE_SIZE = 100;
+
+    private static final int UPLOAD_BUFFER_BYTES = 64 * 1024;
+
+    private final SingleFlight<String, Image> transforms = new SingleFlight<>();
+    private final SingleFlight<Object, byte[]> reads = new SingleFlight<>();
 
     public Image uploadImage(MultipartFile file) {
+        long start = PipelineMetrics.start();
         User user = userService.getCurrentUser();
 
         if (file.isEmpty() || file.getSize() > maxFileSize) {
             throw new CustomException("Invalid file: empty or exceeds size limit");
         }
 
-        String userKey = user.getId().toString();
-        rateLimiter.compute(userKey + "_upload", (k, v) -> v == null ? 1 : v + 1);
-        if (rateLimiter.get(userKey + "_upload") > 10) {
-            throw new CustomException("Upload rate limit exceeded");
-        }
+        rateLimiter.acquire(RateLimiter.UPLOAD, user.getId());
 
+        Path filePath = null;
         try {
-            File dir = new File(uploadDir);
-            if (!dir.exists()) dir.mkdirs();
-
             String originalName = file.getOriginalFilename();
             String extension = originalName.substring(originalName.lastIndexOf("."));
-            String fileName = UUID.randomUUID() + extension;
 
-            Path filePath = Paths.get(uploadDir, fileName);
+            filePath = storage.createStagingFile(extension);
             file.transferTo(filePath);
 
-            int[] dimensions = ImageProcessorUtil.getImageDimensions(filePath.toString());
-            String mimeType = Files.probeContentType(filePath);
+            ImageMetadata metadata = ImageProcessorUtil.probe(filePath);
+            String contentHash = ContentHash.sha256(filePath);
+            String storedName = blobStore.add(filePath, contentHash, extension.substring(1).toLowerCase(Locale.ROOT));
+            filePath = null;
 
-            Image image = new Image();
-            image.setOriginalName(originalName);
-            image.setFileName(fileName);
-            image.setUrl("/uploads/" + fileName);
-            image.setMimeType(mimeType);
-            image.setSize(file.getSize());
-            image.setWidth(dimensions[0]);
-            image.setHeight(dimensions[1]);
-            image.setUser(user);
+            return saveUpload(user, originalName, storedName, file.getSize(), contentHash,
+                    metadata.width(), metadata.height(), metadata.mimeType(), metadata.format(), start);
+        } catch (IOException e) {
+            throw new CustomException("Failed to upload image: " + e.getMessage());
+        } finally {
+            deleteQuietly(filePath);
+        }
+    }
 
-            return imageRepository.save(image);
+    /**
+     * Stores a raw request body (not multipart) in one pass: the body is written straight to its
+     * final file while it is hashed, and its format comes from the magic bytes rather than the
+     * client's file name. Oversized bodies fail with 413 as soon as the limit is crossed, and
+     * non-images with 415 before anything is written to disk.
+     */
+    public Image uploadImage(InputStream body, long contentLength, String originalName) {
+        long start = PipelineMetrics.start();
+        User user = userService.getCurrentUser();
+
+        if (contentLength > maxFileSize) {
+            throw new CustomException("File exceeds size limit of " + maxFileSize + " bytes", 413);
+        }
+        rateLimiter.acquire(RateLimiter.UPLOAD, user.getId());
+
+        MessageDigest digest = ContentHash.newDigest();
+        byte[] buffer = new byte[UPLOAD_BUFFER_BYTES];
+        // The first chunk of the body, kept for the magic bytes and the header
+        byte[] head = new byte[UPLOAD_BUFFER_BYTES];
+        int headLength = 0;
+        long total = 0;
+        ImageSniffer.Format format = null;
+        Path filePath = null;
+        FileChannel channel = null;
+        try {
+            int n;
+            while ((n = body.read(buffer)) != -1) {
+                total += n;
+                if (total > maxFileSize) {
+                    throw new CustomException("File exceeds size limit of " + maxFileSize + " bytes", 413);
+                }
+                digest.update(buffer, 0, n);
+                int earlier = headLength;
+                int copied = Math.min(n, head.length - headLength);
+                System.arraycopy(buffer, 0, head, headLength, copied);
+                headLength += copied;
+
+                if (channel == null) {
+                    if (headLength < ImageSniffer.MAGIC_BYTES) continue;
+                    format = sniffUpload(head, headLength);
+                    filePath = storage.createStagingFile("." + format.extension());
+                    channel = FileChannel.open(filePath, StandardOpenOption.WRITE);
+                    writeFully(channel, head, earlier);
+                }
+                writeFully(channel, buffer, n);
+            }
+            if (total == 0) {
+                throw new CustomException("Invalid file: empty body");
+            }
+            if (channel == null) { // shorter than the magic bytes
+                format = sniffUpload(head, headLength);
+                filePath = storage.createStagingFile("." + format.extension());
+                channel = FileChannel.open(filePath, StandardOpenOption.WRITE);
+                writeFully(channel, head, headLength);
+            }
+            channel.close();
+
+            int[] dimensions = ImageSniffer.dimensions(format, head, headLength);
+            if (dimensions == null) {
+                // Header not in the first chunk, or a format without a parser here; read just the header back
+                ImageMetadata metadata = ImageProcessorUtil.probe(filePath);
+                dimensions = new int[]{metadata.width(), metadata.height()};
+            }
+
+            // Renamed to its content address, or dropped if these bytes are already stored
+            String contentHash = HexFormat.of().formatHex(digest.digest());
+            String storedName = blobStore.add(filePath, contentHash, format.extension());
+            filePath = null;
+
+            String name = StringUtils.hasText(originalName) ? originalName : "upload." + format.extension();
+            return saveUpload(user, name, storedName, total, contentHash,
+                    dimensions[0], dimensions[1], format.mimeType(), format.name(), start);
         } catch (IOException e) {
             throw new CustomException("Failed to upload image: " + e.getMessage());
+        } finally {
+            closeQuietly(channel);
+            deleteQuietly(filePath);
+        }
+    }
+
+    private static ImageSniffer.Format sniffUpload(byte[] head, int length) {
+        ImageSniffer.Format format = ImageSniffer.sniff(head, length);
+        if (format == null) {
+            throw new CustomException("Unsupported media type: not a recognised image", 415);
+        }
+        return format;
+    }
+
+    private static void writeFully(FileChannel channel, byte[] bytes, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
         }
     }
 
-    @CacheEvict(value = "transformedImages", key = "#imageId")
+    // Staging files are moved away by a successful put, so this only catches leftovers
+    static void deleteQuietly(Path file) {
+        if (file == null) return;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private Image saveUpload(User user, String originalName, String fileName, long size, String contentHash,
+                             int width, int height, String mimeType, String format, long start) {
+        Image image = new Image();
+        image.setOriginalName(originalName);
+        image.setFileName(fileName);
+        publish(image);
+        image.setMimeType(mimeType);
+        image.setContentHash(contentHash);
+        image.setSize(size);
+        image.setWidth(width);
+        image.setHeight(height);
+        image.setUser(user);
+
+        Image saved = saveReferencing(image);
+        eventPublisher.publishEvent(new ImageUploadedEvent(saved));
+        PipelineMetrics.bytesRead("upload", size);
+        PipelineMetrics.operation("upload", format, start);
+        return saved;
+    }
+
     public Image transformImage(Long imageId, TransformationRequest request) {
-        Image original = imageRepository.findById(imageId)
-                .orElseThrow(() -> new CustomException("Image not found"));
+        return transformImage(imageId, request, true);
+    }
 
+    /**
+     * @param acquirePermit false when the caller already took the transform permit (queued jobs
+     *                      are charged on submission, so the client gets its 429 straight away)
+     */
+    Image transformImage(Long imageId, TransformationRequest request, boolean acquirePermit) {
+        long start = PipelineMetrics.start();
         User user = userService.getCurrentUser();
-        if (!original.getUser().equals(user)) {
-            throw new CustomException("Unauthorized access to image");
-        }
+        Image original = findOwned(imageId, user);
+        checkOutput(request.getTransformations());
 
-        String userKey = user.getId().toString();
-        rateLimiter.compute(userKey + "_transform", (k, v) -> v == null ? 1 : v + 1);
-        if (rateLimiter.get(userKey + "_transform") > 5) {
-            throw new CustomException("Transformation rate limit exceeded");
+        // Serve an identical earlier transform without decoding the original again
+        String source = sourceKey(original);
+        String specHash = TransformationKeys.hash(source, request.getTransformations());
+        String cacheKey = DerivativeCache.key(source, specHash);
+        Image cached = derivativeCache.get(cacheKey);
+        PipelineMetrics.cacheLookup("derivatives", cached != null);
+        if (cached != null) {
+            PipelineMetrics.operation("transform",
+                    TransformationKeys.normalizeFormat(request.getTransformations().getFormat()), start);
+            return ownedBy(cached, user);
         }
 
+        // Charged per caller: a coalesced render below is still work each of them asked for
+        if (acquirePermit) {
+            rateLimiter.acquire(RateLimiter.TRANSFORM, user.getId());
+        }
         try {
-            Path originalPath = Paths.get(uploadDir, original.getFileName());
-            Path transformedPath = ImageProcessorUtil.applyTransformations(originalPath, request.getTransformations());
-
-            int[] dims = ImageProcessorUtil.getImageDimensions(transformedPath.toString());
-            String mimeType = Files.probeContentType(transformedPath);
-
-            Image transformed = new Image();
-            transformed.setOriginalName(original.getOriginalName() + "_transformed");
-            transformed.setFileName(transformedPath.getFileName().toString());
-            transformed.setUrl("/uploads/" + transformedPath.getFileName());
-            transformed.setMimeType(mimeType);
-            transformed.setSize(Files.size(transformedPath));
-            transformed.setWidth(dims[0]);
-            transformed.setHeight(dims[1]);
-            transformed.setUser(user);
-
-            return imageRepository.save(transformed);
+            // Identical requests arriving while this one renders wait for it instead of rendering again
+            Image saved = transforms.execute(cacheKey, () -> {
+                Image done = derivativeCache.get(cacheKey);
+                if (done != null) {
+                    return done;
+                }
+                TransformationRequest.Transformations t = request.getTransformations();
+                Image image = saveReferencing(stageDerivative(original, t, user,
+                        target -> storage.withLocalFile(original.getFileName(),
+                                path -> ImageProcessorUtil.applyTransformations(path, t, target))));
+                derivativeCache.put(cacheKey, image);
+                return image;
+            });
+            PipelineMetrics.operation("transform",
+                    TransformationKeys.normalizeFormat(request.getTransformations().getFormat()), start);
+            // The render may have been done for another owner of the same original
+            return ownedBy(saved, user);
         } catch (IOException e) {
             throw new CustomException("Failed to transform image: " + e.getMessage());
         }
     }
 
-    @Cacheable(value = "images", key = "#id")
-    public byte[] retrieveImage(Long id) {
+    /**
+     * The image with this id if {@code user} owns it: 404 if there is none, 403 if it belongs to
+     * someone else.
+     */
+    Image findOwned(Long imageId, User user) {
+        Image image = imageRepository.findById(imageId)
+                .orElseThrow(() -> new CustomException("Image not found", 404));
+        if (!image.getUser().equals(user)) {
+            throw new CustomException("Unauthorized access to image", 403);
+        }
+        return image;
+    }
+
+    @FunctionalInterface
+    interface StagedRender {
+        TransformedImage renderTo(Path target) throws IOException;
+    }
+
+    /**
+     * Renders {@code t} into a new staging file and describes the result as an unsaved derivative
+     * (see {@link #newDerivative}). The staging file is removed if the blob store never takes it.
+     */
+    Image stageDerivative(Image original, TransformationRequest.Transformations t, User user,
+                          StagedRender render) throws IOException {
+        Path target = storage.createStagingFile("." + ImageProcessorUtil.outputFormat(t));
+        try {
+            return newDerivative(original, render.renderTo(target), user);
+        } finally {
+            deleteQuietly(target);
+        }
+    }
+
+    /**
+     * Rejects a spec whose output format cannot be written here, or whose encoder options are out
+     * of range, before anything is decoded or queued.
+     */
+    static void checkOutput(TransformationRequest.Transformations t) {
+        if (t == null) {
+            throw new CustomException("transformations is required");
+        }
+        try {
+            ImageEncoders.validate(t);
+        } catch (IllegalArgumentException e) {
+            throw new CustomException(e.getMessage());
+        }
+    }
+
+    /**
+     * Identity of an original's bytes for derivative keys. Owners of identical uploads share the
+     * blob and therefore its derivatives; rows from before deduplication fall back to the id.
+     */
+    static String sourceKey(Image original) {
+        return original.getContentHash() != null ? original.getContentHash() : original.getId().toString();
+    }
+
+    /**
+     * Unsaved row describing a transform result. The file is added to the blob store, so it
+     * holds a reference that is dropped again if the row is never saved.
+     */
+    Image newDerivative(Image original, TransformedImage result, User user) throws IOException {
+        Path transformedPath = result.path();
+        String contentHash = ContentHash.sha256(transformedPath);
+        long size = Files.size(transformedPath);
+        String storedName = blobStore.add(transformedPath, contentHash,
+                StringUtils.getFilenameExtension(transformedPath.getFileName().toString()));
+
+        Image transformed = new Image();
+        transformed.setOriginalName(original.getOriginalName() + "_transformed");
+        transformed.setFileName(storedName);
+        publish(transformed);
+        transformed.setMimeType(result.metadata().mimeType());
+        transformed.setContentHash(contentHash);
+        transformed.setSize(size);
+        transformed.setWidth(result.metadata().width());
+        transformed.setHeight(result.metadata().height());
+        transformed.setUser(user);
+        return transformed;
+    }
+
+    /**
+     * {@code derivative} if the user owns it, otherwise the user's own row for the same file,
+     * created on first use. {@code derivative} may also be an unowned row from the transform cache.
+     * Lets a transform rendered once serve every owner of the original without rendering again.
+     */
+    Image ownedBy(Image derivative, User user) {
+        if (derivative.getUser() != null && derivative.getUser().getId().equals(user.getId())) {
+            return derivative;
+        }
+        Image existing = imageRepository.findFirstByUserAndFileNameAndParentIsNull(user, derivative.getFileName());
+        if (existing != null) {
+            return existing;
+        }
+        if (derivative.getContentHash() == null || !blobStore.retain(derivative.getContentHash())) {
+            throw new CustomException("Transform result is no longer available, please retry", 503);
+        }
+        Image copy = new Image();
+        copy.setOriginalName(derivative.getOriginalName());
+        copy.setFileName(derivative.getFileName());
+        publish(copy);
+        copy.setMimeType(derivative.getMimeType());
+        copy.setContentHash(derivative.getContentHash());
+        copy.setSize(derivative.getSize());
+        copy.setWidth(derivative.getWidth());
+        copy.setHeight(derivative.getHeight());
+        copy.setUser(user);
+        return saveReferencing(copy);
+    }
+
+    /**
+     * Saves a row that holds a blob reference, dropping the reference if the insert fails.
+     */
+    Image saveReferencing(Image image) {
+        try {
+            return imageRepository.save(image);
+        } catch (RuntimeException e) {
+            blobStore.release(image.getContentHash());
+            throw e;
+        }
+    }
+
+    public Image getImage(Long id) {
         Image image = imageRepository.findById(id)
                 .orElseThrow(() -> new CustomException("Image not found"));
 
@@ -131,19 +433,136 @@ public class ImageService {
         if (!image.getUser().equals(user)) {
             throw new CustomException("Unauthorized access");
         }
+        return image;
+    }
+
+    /**
+     * Opens the stored file for streaming. Files up to app.image-cache.max-entry-bytes are served
+     * from the heap cache; larger ones are streamed from storage and never buffered.
+     */
+    public Resource openImage(Image image) {
+        long start = PipelineMetrics.start();
+        String format = StringUtils.getFilenameExtension(image.getFileName());
+        String key = image.getFileName();
+        Cache cache = cacheManager.getCache("images");
+
+        Long size = image.getSize();
+        if (cache == null || size == null || size > maxCachedImageBytes) {
+            try {
+                Resource resource = storage.stream(key);
+                PipelineMetrics.operation("retrieve", format, start);
+                return resource;
+            } catch (NoSuchFileException e) {
+                throw new CustomException("Image file not found", 404);
+            } catch (IOException e) {
+                throw new CustomException("Failed to read image: " + e.getMessage());
+            }
+        }
+
+        // Keyed by content, so identical uploads share one cached copy
+        Object cacheKey = image.getContentHash() != null ? image.getContentHash() : image.getId();
+        byte[] bytes = cache.get(cacheKey, byte[].class);
+        PipelineMetrics.cacheLookup("images", bytes != null);
+        if (bytes == null) {
+            // One read per file however many requests miss at once
+            try {
+                bytes = reads.execute(cacheKey, () -> {
+                    byte[] read = storage.get(key);
+                    cache.put(cacheKey, read);
+                    PipelineMetrics.bytesRead("retrieve", read.length);
+                    return read;
+                });
+            } catch (NoSuchFileException e) {
+                throw new CustomException("Image file not found", 404);
+            } catch (IOException e) {
+                throw new CustomException("Failed to read image: " + e.getMessage());
+            }
+        }
+        PipelineMetrics.operation("retrieve", format, start);
+        return new ByteArrayResource(bytes);
+    }
 
+    /**
+     * Opens a stored file by name for /uploads/**. Unknown names are 404s.
+     */
+    public Resource openStoredFile(String fileName) {
         try {
-            Path path = Paths.get(uploadDir, image.getFileName());
-            return Files.readAllBytes(path);
+            return storage.stream(fileName);
+        } catch (NoSuchFileException | IllegalArgumentException e) {
+            throw new CustomException("File not found", 404);
         } catch (IOException e) {
-            throw new CustomException("Failed to read image: " + e.getMessage());
+            throw new CustomException("Failed to read file: " + e.getMessage());
         }
     }
 
+    /**
+     * The stored file and content hash (the ETag) behind a public /uploads name. Null when unknown.
+     */
+    @Cacheable(value = "uploads", key = "#publicName")
+    public PublicFile findPublicFile(String publicName) {
+        List<PublicFile> files = imageRepository.findPublicFiles(publicName, Limit.of(1));
+        return files.isEmpty() ? null : files.get(0);
+    }
+
+    /**
+     * Gives a new row its own random public name and URL, keeping the stored file's extension.
+     * Rows sharing a blob get different names, so a URL identifies one row, not the content.
+     */
+    static void publish(Image image) {
+        String extension = StringUtils.getFilenameExtension(image.getFileName());
+        String name = UUID.randomUUID().toString().replace("-", "");
+        image.setPublicName(extension != null ? name + "." + extension : name);
+        image.setUrl("/uploads/" + image.getPublicName());
+    }
+
     public Page<ImageResponse> listImages(int page, int size) {
         User user = userService.getCurrentUser();
         Pageable pageable = PageRequest.of(page, size);
-        Page<Image> images = imageRepository.findByUser(user, pageable);
+        Page<Image> images = imageRepository.findByUserAndParentIsNull(user, pageable);
         return images.map(ImageResponse::new);
     }
+
+    /**
+     * Newest-first listing by (uploadDate, id) keyset. Each page is one index range scan with no
+     * count query, and rows are projected straight into ImageResponse.
+     */
+    public CursorPage<ImageResponse> listImagesAfter(String cursor, int limit) {
+        User user = userService.getCurrentUser();
+        int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        // One extra row tells us whether there is a next page
+        Limit fetch = Limit.of(size + 1);
+
+        List<ImageResponse> rows;
+        if (cursor == null || cursor.isBlank()) {
+            rows = imageRepository.findNewestByUserId(user.getId(), fetch);
+        } else {
+            CursorPosition last = decodeCursor(cursor);
+            rows = imageRepository.findByUserIdBefore(user.getId(), last.uploadDate(), last.id(), fetch);
+        }
+
+        if (rows.size() <= size) {
+            return new CursorPage<>(rows, null);
+        }
+        List<ImageResponse> page = rows.subList(0, size);
+        ImageResponse tail = page.get(size - 1);
+        return new CursorPage<>(List.copyOf(page), encodeCursor(tail.getUploadDate(), tail.getId()));
+    }
+
+    private static String encodeCursor(LocalDateTime uploadDate, Long id) {
+        String raw = uploadDate + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private record CursorPosition(LocalDateTime uploadDate, long id) {
+    }
+
+    private static CursorPosition decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int sep = raw.lastIndexOf('|');
+            return new CursorPosition(LocalDateTime.parse(raw.substring(0, sep)), Long.parseLong(raw.substring(sep + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException | IndexOutOfBoundsException e) {
+            throw new CustomException("Invalid cursor");
+        }
+    }
 }
\ No newline at end of file
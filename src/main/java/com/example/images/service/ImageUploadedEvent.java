@@ -0,0 +1,9 @@
+package com.example.images.service;
+
+import com.example.images.entity.Image;
+
+/**
+ * Published once an original has been stored and its row saved.
+ */
+public record ImageUploadedEvent(Image image) {
+}
@@ -0,0 +1,51 @@
+package com.example.images.service;
+
+import com.example.images.config.RateLimitProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-local {@link RateLimitStore} using the generic cell rate algorithm: each user's state is a
+ * single "theoretical arrival time" updated with a CAS loop, which behaves like a token bucket of
+ * {@code capacity} permits refilled evenly over {@code period} without locks or a refill timer.
+ * <p>
+ * Entries idle for a full period carry no information (their bucket is full again), so each
+ * operation's map expires them after that long and memory tracks active users only.
+ */
+public class InMemoryRateLimitStore implements RateLimitStore {
+
+    private final Map<String, Cache<Long, AtomicLong>> states = new HashMap<>();
+
+    public InMemoryRateLimitStore(RateLimitProperties properties) {
+        properties.getRateLimits().forEach((operation, limit) -> states.put(operation,
+                Caffeine.newBuilder().expireAfterAccess(limit.getPeriod()).build()));
+    }
+
+    @Override
+    public long tryAcquire(String operation, long userId, RateLimitProperties.Limit limit) {
+        Cache<Long, AtomicLong> cache = states.get(operation);
+        if (cache == null) {
+            return 0;
+        }
+        long interval = limit.getPeriod().toNanos() / Math.max(1, limit.getCapacity());
+        long burst = limit.getPeriod().toNanos() - interval;
+
+        AtomicLong tat = cache.get(userId, id -> new AtomicLong(Long.MIN_VALUE));
+        while (true) {
+            long now = System.nanoTime();
+            long current = tat.get();
+            long base = current == Long.MIN_VALUE || current - now < 0 ? now : current;
+            long wait = base - now - burst;
+            if (wait > 0) {
+                return wait;
+            }
+            if (tat.compareAndSet(current, base + interval)) {
+                return 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.images.service;
+
+import com.example.images.util.ContentHash;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HexFormat;
+
+/**
+ * Files under app.upload-dir, sharded into {@code shardDepth} levels of two-hex-digit directories
+ * taken from the SHA-256 of the key ({@code ab/cd/<key>}), so no directory grows past a few
+ * thousand entries. Files from the old flat layout are still found at the root.
+ */
+public class LocalStorageBackend implements StorageBackend {
+
+    private static final String STAGING_DIR = ".staging";
+
+    private final Path root;
+    private final Path staging;
+    private final int shardDepth;
+
+    public LocalStorageBackend(Path root, int shardDepth) throws IOException {
+        this.root = root.toAbsolutePath().normalize();
+        this.staging = this.root.resolve(STAGING_DIR);
+        this.shardDepth = shardDepth;
+        Files.createDirectories(staging);
+    }
+
+    @Override
+    public void put(String key, Path file) throws IOException {
+        Path target = shardedPath(key);
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(file, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            // Staged on another filesystem: copy next to the target first so the final step is still a rename
+            Path temp = Files.createTempFile(target.getParent(), "." + key + "-", ".tmp");
+            try {
+                Files.copy(file, temp, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            Files.deleteIfExists(file);
+        }
+        Files.deleteIfExists(legacyPath(key));
+    }
+
+    @Override
+    public byte[] get(String key) throws IOException {
+        return Files.readAllBytes(existingPath(key));
+    }
+
+    @Override
+    public Resource stream(String key) throws IOException {
+        return new FileSystemResource(existingPath(key));
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(shardedPath(key));
+        Files.deleteIfExists(legacyPath(key));
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return Files.exists(shardedPath(key)) || Files.exists(legacyPath(key));
+    }
+
+    @Override
+    public long size(String key) throws IOException {
+        return Files.size(existingPath(key));
+    }
+
+    @Override
+    public <T> T withLocalFile(String key, LocalFileAction<T> action) throws IOException {
+        return action.apply(existingPath(key));
+    }
+
+    @Override
+    public Path createStagingFile(String suffix) throws IOException {
+        return Files.createTempFile(staging, "stage-", suffix);
+    }
+
+    private Path existingPath(String key) throws NoSuchFileException {
+        Path sharded = shardedPath(key);
+        if (Files.exists(sharded)) return sharded;
+        Path legacy = legacyPath(key);
+        if (Files.exists(legacy)) return legacy;
+        throw new NoSuchFileException(key);
+    }
+
+    private Path shardedPath(String key) {
+        checkKey(key);
+        String digest = HexFormat.of().formatHex(ContentHash.newDigest().digest(key.getBytes(StandardCharsets.UTF_8)));
+        Path dir = root;
+        for (int level = 0; level < shardDepth; level++) {
+            dir = dir.resolve(digest.substring(level * 2, level * 2 + 2));
+        }
+        return dir.resolve(key);
+    }
+
+    private Path legacyPath(String key) {
+        checkKey(key);
+        return root.resolve(key);
+    }
+
+    // Keys come from URLs on the public /uploads path; never let one leave the root
+    private static void checkKey(String key) {
+        if (key == null || key.isEmpty() || key.startsWith(".") || key.contains("/") || key.contains("\\")) {
+            throw new IllegalArgumentException("Invalid storage key: " + key);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.images.service;
+
+import com.example.images.config.RateLimitProperties;
+
+/**
+ * Where rate-limit state lives. Implementations must apply {@link #tryAcquire} atomically per key,
+ * so a store shared between nodes (e.g. a key-value server running the same check as a script)
+ * gives a cluster-wide limit.
+ */
+public interface RateLimitStore {
+
+    /**
+     * Takes one permit for the user and operation.
+     *
+     * @return 0 if the request is allowed, otherwise the nanoseconds until the next permit frees up
+     */
+    long tryAcquire(String operation, long userId, RateLimitProperties.Limit limit);
+}
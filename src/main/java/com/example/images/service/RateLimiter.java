@@ -0,0 +1,43 @@
+package com.example.images.service;
+
+import com.example.images.config.RateLimitProperties;
+import com.example.images.exception.CustomException;
+import com.example.images.util.PipelineMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-user limits for expensive operations, configured under {@code app.rate-limits}.
+ */
+@Component
+public class RateLimiter {
+
+    public static final String UPLOAD = "upload";
+    public static final String TRANSFORM = "transform";
+    public static final String RENDER = "render";
+
+    @Autowired
+    private RateLimitProperties properties;
+
+    @Autowired
+    private RateLimitStore store;
+
+    /**
+     * Takes a permit or throws a 429 naming the operation and when to retry.
+     */
+    public void acquire(String operation, long userId) {
+        RateLimitProperties.Limit limit = properties.getRateLimits().get(operation);
+        if (limit == null || limit.getCapacity() <= 0) {
+            return;
+        }
+        long waitNanos = store.tryAcquire(operation, userId, limit);
+        if (waitNanos > 0) {
+            PipelineMetrics.rateLimited(operation);
+            long seconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999L));
+            throw new CustomException(Character.toUpperCase(operation.charAt(0)) + operation.substring(1)
+                    + " rate limit exceeded, retry in " + seconds + "s", 429);
+        }
+    }
+}
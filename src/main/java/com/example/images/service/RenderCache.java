@@ -0,0 +1,146 @@
+package com.example.images.service;
+
+import com.example.images.util.PipelineMetrics;
+import com.example.images.util.SingleFlight;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * On-disk LRU of rendered derivatives, capped by total file size. Files are named by key, so the
+ * index is rebuilt from the directory on startup. Concurrent requests for a key that is being
+ * rendered wait for that render instead of starting their own, and files are written to a temp
+ * name and moved into place so readers never see a partial file.
+ */
+@Component
+public class RenderCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(RenderCache.class);
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.render-cache.dir:render-cache/}")
+    private String dir;
+
+    @Value("${app.render-cache.max-bytes:536870912}")
+    private long maxBytes;
+
+    private Path root;
+    private Cache<String, Path> cache;
+    private final SingleFlight<String, Path> renders = new SingleFlight<>();
+
+    @FunctionalInterface
+    public interface Renderer {
+        void renderTo(Path target) throws IOException;
+    }
+
+    @PostConstruct
+    void init() throws IOException {
+        root = Paths.get(dir);
+        Files.createDirectories(root);
+        cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String key, Path path) -> (int) Math.min(Integer.MAX_VALUE, sizeOf(path)))
+                .removalListener((String key, Path path, RemovalCause cause) -> {
+                    if (path != null && cause.wasEvicted()) {
+                        delete(path);
+                    }
+                })
+                .recordStats()
+                .build();
+        if (meterRegistry != null) {
+            // Not in the CacheManager, so bound here with the tags Boot gives the managed caches
+            CaffeineCacheMetrics.monitor(meterRegistry, cache, "renders",
+                    "name", "renders", "cache.manager", "cacheManager");
+        }
+
+        // Oldest first, so the LRU order roughly matches the files' age
+        try (Stream<Path> files = Files.list(root)) {
+            files.sorted(Comparator.comparingLong(RenderCache::lastModified)).forEach(path -> {
+                String name = path.getFileName().toString();
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    delete(path); // left over from a render interrupted by shutdown
+                } else if (Files.isRegularFile(path)) {
+                    cache.put(name, path);
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the cached file for {@code key}, or null if it has not been rendered.
+     */
+    public Path getIfPresent(String key) {
+        Path cached = cache.getIfPresent(key);
+        boolean hit = cached != null && Files.exists(cached);
+        PipelineMetrics.cacheLookup("render", hit);
+        return hit ? cached : null;
+    }
+
+    /**
+     * Renders the file for {@code key} after a miss in {@link #getIfPresent}. Callers that arrive
+     * while the key is being rendered share that render.
+     */
+    public Path render(String key, Renderer renderer) throws IOException {
+        return renders.execute(key, () -> {
+            // Finished by the caller we just missed
+            Path done = cache.getIfPresent(key);
+            if (done != null && Files.exists(done)) {
+                return done;
+            }
+            Path target = root.resolve(key);
+            Path temp = Files.createTempFile(root, key + "-", TEMP_SUFFIX);
+            try {
+                renderer.renderTo(temp);
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            cache.put(key, target);
+            return target;
+        });
+    }
+
+    private static long sizeOf(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.warn("Failed to delete cached render {}: {}", path, e.getMessage());
+        }
+    }
+}
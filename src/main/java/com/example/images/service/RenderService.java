@@ -0,0 +1,174 @@
+package com.example.images.service;
+
+import com.example.images.dto.TransformationRequest;
+import com.example.images.entity.Image;
+import com.example.images.entity.User;
+import com.example.images.exception.CustomException;
+import com.example.images.util.ImageEncoders;
+import com.example.images.util.ImageProcessorUtil;
+import com.example.images.util.PipelineMetrics;
+import com.example.images.util.TransformationKeys;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * URL-addressed renders ({@code /images/{id}/render?w=..&h=..&fit=..&fmt=..&q=..}). Output goes
+ * to the {@link RenderCache} only; no image rows are created, so any number of sizes can be
+ * requested without growing the database.
+ */
+@Service
+public class RenderService {
+
+    @Autowired
+    private ImageService imageService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private RenderCache renderCache;
+
+    @Autowired
+    private RateLimiter rateLimiter;
+
+    @Autowired
+    private StorageBackend storage;
+
+    @Value("${app.render.max-dimension:4096}")
+    private int maxDimension;
+
+    /**
+     * A validated render request. {@code key} identifies the output bytes and doubles as the ETag.
+     */
+    public record RenderRequest(Image image, TransformationRequest.Transformations transformations, String key) {
+
+        public String format() {
+            return transformations.getFormat();
+        }
+    }
+
+    /**
+     * Validates the parameters against an image the current user owns. Nothing is decoded yet, so
+     * conditional requests can be answered from the key alone.
+     */
+    public RenderRequest prepare(Long imageId, Integer width, Integer height, String fit, String format,
+                                 Integer quality) {
+        Image image = imageService.getImage(imageId);
+        if (width == null && height == null) {
+            throw new CustomException("At least one of w and h is required");
+        }
+        checkDimension("w", width);
+        checkDimension("h", height);
+        if (quality != null && (quality < 1 || quality > 100)) {
+            throw new CustomException("q must be between 1 and 100");
+        }
+
+        String fmt = format != null ? TransformationKeys.normalizeFormat(format) : defaultFormat(image);
+        if (ImageEncoders.forFormat(fmt) == null) {
+            throw new CustomException("Unsupported output format: " + fmt
+                    + " (supported: " + String.join(", ", ImageEncoders.formats()) + ")");
+        }
+
+        TransformationRequest.Transformations t = fit(image.getWidth(), image.getHeight(), width, height,
+                fit != null ? fit.toLowerCase(Locale.ROOT) : "contain");
+        t.setFormat(fmt);
+        t.setQuality(quality);
+
+        String source = image.getContentHash() != null ? image.getContentHash() : "image:" + image.getId();
+        return new RenderRequest(image, t, TransformationKeys.hash(source, t));
+    }
+
+    /**
+     * Path of the rendered file, rendering it on a cache miss.
+     */
+    public Path render(RenderRequest request) {
+        long start = PipelineMetrics.start();
+        User user = userService.getCurrentUser();
+        try {
+            Path path = renderCache.getIfPresent(request.key());
+            if (path == null) {
+                // Cached sizes are free; a miss is charged to every caller, even one sharing a render
+                rateLimiter.acquire(RateLimiter.RENDER, user.getId());
+                path = renderCache.render(request.key(), target ->
+                        storage.withLocalFile(request.image().getFileName(), source ->
+                                ImageProcessorUtil.applyTransformations(source, request.transformations(), target)));
+            }
+            PipelineMetrics.operation("render", request.format(), start);
+            return path;
+        } catch (IOException e) {
+            throw new CustomException("Failed to render image: " + e.getMessage());
+        }
+    }
+
+    /**
+     * contain: fit inside w x h, never enlarged. fill: exactly w x h, ignoring aspect ratio.
+     * crop: cover w x h and trim the overflow evenly from both sides. fill and crop fall back to
+     * contain when only one side is given.
+     */
+    private static TransformationRequest.Transformations fit(int srcWidth, int srcHeight, Integer width,
+                                                             Integer height, String fit) {
+        TransformationRequest.Transformations t = new TransformationRequest.Transformations();
+        boolean bothSides = width != null && height != null;
+        switch (fit) {
+            case "fill" -> {
+                if (bothSides) {
+                    t.setResize(resize(width, height));
+                    return t;
+                }
+            }
+            case "crop" -> {
+                if (bothSides) {
+                    double scale = Math.max((double) width / srcWidth, (double) height / srcHeight);
+                    int rw = Math.max(width, (int) Math.round(srcWidth * scale));
+                    int rh = Math.max(height, (int) Math.round(srcHeight * scale));
+                    t.setResize(resize(rw, rh));
+                    TransformationRequest.Crop crop = new TransformationRequest.Crop();
+                    crop.setX((rw - width) / 2);
+                    crop.setY((rh - height) / 2);
+                    crop.setWidth(width);
+                    crop.setHeight(height);
+                    t.setCrop(crop);
+                    return t;
+                }
+            }
+            case "contain" -> {
+            }
+            default -> throw new CustomException("fit must be one of contain, fill, crop");
+        }
+
+        double scale = 1.0;
+        if (width != null) scale = Math.min(scale, (double) width / srcWidth);
+        if (height != null) scale = Math.min(scale, (double) height / srcHeight);
+        if (scale < 1.0) {
+            t.setResize(resize(Math.max(1, (int) Math.round(srcWidth * scale)),
+                    Math.max(1, (int) Math.round(srcHeight * scale))));
+        }
+        return t;
+    }
+
+    private static TransformationRequest.Resize resize(int width, int height) {
+        TransformationRequest.Resize resize = new TransformationRequest.Resize();
+        resize.setWidth(width);
+        resize.setHeight(height);
+        return resize;
+    }
+
+    private void checkDimension(String name, Integer value) {
+        if (value != null && (value < 1 || value > maxDimension)) {
+            throw new CustomException(name + " must be between 1 and " + maxDimension);
+        }
+    }
+
+    // Keep the original's format when it can be written back, so transparency survives
+    private static String defaultFormat(Image image) {
+        String ext = StringUtils.getFilenameExtension(image.getFileName());
+        String format = TransformationKeys.normalizeFormat(ext);
+        return ImageEncoders.forFormat(format) != null ? format : TransformationKeys.DEFAULT_FORMAT;
+    }
+}
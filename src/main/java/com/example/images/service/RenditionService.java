@@ -0,0 +1,133 @@
+package com.example.images.service;
+
+import com.example.images.config.RenditionProperties;
+import com.example.images.dto.TransformationRequest;
+import com.example.images.entity.Image;
+import com.example.images.exception.CustomException;
+import com.example.images.repository.ImageRepository;
+import com.example.images.util.DecodedSource;
+import com.example.images.util.ImageProcessorUtil;
+import com.example.images.util.RenditionPreset;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Generates the configured rendition presets for each upload in the background, so common sizes
+ * are ready before the first view. A rendition that is not there yet (still queued, or the queue
+ * was full) is generated on first request instead.
+ */
+@Service
+public class RenditionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RenditionService.class);
+
+    @Autowired
+    private RenditionProperties properties;
+
+    @Autowired
+    private ImageRepository imageRepository;
+
+    @Autowired
+    private ImageService imageService;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    @Autowired
+    @Qualifier("renditionExecutor")
+    private TaskExecutor renditionExecutor;
+
+    @Autowired
+    private StorageBackend storage;
+
+    private final Map<String, RenditionPreset> presets = new LinkedHashMap<>();
+
+    @PostConstruct
+    void parsePresets() {
+        // Fail at startup rather than on the first upload
+        properties.getPresets().forEach((name, spec) -> presets.put(name, RenditionPreset.parse(name, spec)));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUpload(ImageUploadedEvent event) {
+        if (presets.isEmpty()) return;
+        Image original = event.image();
+        try {
+            renditionExecutor.execute(() -> generate(original, presets.values()));
+        } catch (TaskRejectedException e) {
+            logger.warn("Rendition queue full, image {} will get renditions on first request", original.getId());
+        }
+    }
+
+    /**
+     * Returns the named rendition of an image the current user owns, generating it if needed.
+     */
+    public Image getRendition(Long imageId, String presetName) {
+        Image original = imageService.getImage(imageId);
+        RenditionPreset preset = presets.get(presetName);
+        if (preset == null) {
+            throw new CustomException("Unknown rendition preset: " + presetName, 404);
+        }
+        return imageRepository.findByParentIdAndPreset(original.getId(), presetName)
+                .orElseGet(() -> {
+                    generate(original, List.of(preset));
+                    return imageRepository.findByParentIdAndPreset(original.getId(), presetName)
+                            .orElseThrow(() -> new CustomException("Failed to generate rendition " + presetName, 500));
+                });
+    }
+
+    private void generate(Image original, Iterable<RenditionPreset> wanted) {
+        Set<String> existing = imageRepository.findByParentId(original.getId()).stream()
+                .map(Image::getPreset)
+                .collect(Collectors.toSet());
+        List<RenditionPreset> missing = new ArrayList<>();
+        for (RenditionPreset p : wanted) {
+            if (!existing.contains(p.name())) missing.add(p);
+        }
+        if (missing.isEmpty()) return;
+
+        List<TransformationRequest.Transformations> specs = missing.stream()
+                .map(p -> p.toTransformations(original.getWidth(), original.getHeight()))
+                .toList();
+        List<Image> renditions = new ArrayList<>();
+        try {
+            // One decode serves every preset
+            DecodedSource decoded = storage.withLocalFile(original.getFileName(),
+                    path -> ImageProcessorUtil.decodeShared(path, specs));
+
+            for (int i = 0; i < missing.size(); i++) {
+                RenditionPreset preset = missing.get(i);
+                TransformationRequest.Transformations spec = specs.get(i);
+                Image rendition = imageService.stageDerivative(original, spec, original.getUser(),
+                        target -> ImageProcessorUtil.applyTransformations(decoded, spec, target));
+                rendition.setOriginalName(original.getOriginalName() + "_" + preset.name());
+                rendition.setParent(original);
+                rendition.setPreset(preset.name());
+                renditions.add(rendition);
+            }
+            imageRepository.saveAll(renditions);
+        } catch (DataIntegrityViolationException e) {
+            // Generated concurrently by the background task and a request; the other copy won
+            logger.debug("Renditions of image {} already saved", original.getId());
+            renditions.forEach(r -> blobStore.release(r.getContentHash()));
+        } catch (IOException e) {
+            logger.warn("Failed to generate renditions for image {}: {}", original.getId(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.images.service;
+
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Where stored files (originals and derivatives) live. Keys are the file names recorded on image
+ * rows, e.g. {@code <sha256>.jpg}; how they are laid out is up to the backend. Reads of a missing
+ * key throw {@link java.nio.file.NoSuchFileException}.
+ */
+public interface StorageBackend {
+
+    /**
+     * Stores the content of a local file under {@code key}, replacing any existing object. Takes
+     * ownership of the file: it is moved into place or deleted once uploaded.
+     */
+    void put(String key, Path file) throws IOException;
+
+    byte[] get(String key) throws IOException;
+
+    /**
+     * The object as a resource for serving. Local backends return a file resource, so responses
+     * can still go out via sendfile.
+     */
+    Resource stream(String key) throws IOException;
+
+    void delete(String key) throws IOException;
+
+    boolean exists(String key) throws IOException;
+
+    long size(String key) throws IOException;
+
+    /**
+     * Runs {@code action} with a local file holding the object, for code that needs random access
+     * (ImageIO). Remote backends download it to a temp file for the duration of the call.
+     */
+    <T> T withLocalFile(String key, LocalFileAction<T> action) throws IOException;
+
+    /**
+     * New empty scratch file to write content into before {@link #put}. Local backends create it
+     * on the storage filesystem, so the put is a rename.
+     */
+    Path createStagingFile(String suffix) throws IOException;
+
+    @FunctionalInterface
+    interface LocalFileAction<T> {
+        T apply(Path file) throws IOException;
+    }
+}
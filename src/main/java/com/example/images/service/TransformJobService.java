@@ -0,0 +1,118 @@
+package com.example.images.service;
+
+import com.example.images.dto.ImageResponse;
+import com.example.images.dto.TransformJobResponse;
+import com.example.images.dto.TransformationRequest;
+import com.example.images.entity.Image;
+import com.example.images.entity.User;
+import com.example.images.exception.CustomException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.security.concurrent.DelegatingSecurityContextRunnable;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs transforms off the servlet thread. Jobs are kept in memory for an hour after submission
+ * so clients can poll for the result.
+ */
+@Service
+public class TransformJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransformJobService.class);
+
+    public enum Status { QUEUED, RUNNING, DONE, FAILED }
+
+    @Autowired
+    private ImageService imageService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private RateLimiter rateLimiter;
+
+    @Autowired
+    @Qualifier("transformJobExecutor")
+    private TaskExecutor transformJobExecutor;
+
+    private final Cache<String, Job> jobs = Caffeine.newBuilder()
+            .expireAfterWrite(1, TimeUnit.HOURS)
+            .maximumSize(10_000)
+            .build();
+
+    private static class Job {
+        final String id = UUID.randomUUID().toString();
+        final Long userId;
+        final Long sourceImageId;
+        final LocalDateTime submittedAt = LocalDateTime.now();
+        volatile Status status = Status.QUEUED;
+        volatile Image result;
+        volatile String error;
+        volatile LocalDateTime completedAt;
+
+        Job(Long userId, Long sourceImageId) {
+            this.userId = userId;
+            this.sourceImageId = sourceImageId;
+        }
+    }
+
+    public TransformJobResponse submit(Long imageId, TransformationRequest request) {
+        User user = userService.getCurrentUser();
+        imageService.findOwned(imageId, user);
+        ImageService.checkOutput(request.getTransformations());
+        // Charged here rather than in the worker, so an over-limit client gets 429 instead of a failed job
+        rateLimiter.acquire(RateLimiter.TRANSFORM, user.getId());
+        Job job = new Job(user.getId(), imageId);
+
+        Runnable task = DelegatingSecurityContextRunnable.create(() -> run(job, request),
+                SecurityContextHolder.getContext());
+        jobs.put(job.id, job);
+        try {
+            transformJobExecutor.execute(task);
+        } catch (TaskRejectedException e) {
+            jobs.invalidate(job.id);
+            throw new CustomException("Transform queue is full, retry later", 429);
+        }
+        return toResponse(job);
+    }
+
+    public TransformJobResponse getJob(String jobId) {
+        Job job = jobs.getIfPresent(jobId);
+        User user = userService.getCurrentUser();
+        if (job == null || !job.userId.equals(user.getId())) {
+            throw new CustomException("Job not found", 404);
+        }
+        return toResponse(job);
+    }
+
+    private void run(Job job, TransformationRequest request) {
+        job.status = Status.RUNNING;
+        try {
+            job.result = imageService.transformImage(job.sourceImageId, request, false);
+            job.status = Status.DONE;
+        } catch (RuntimeException e) {
+            logger.warn("Transform job {} failed: {}", job.id, e.getMessage());
+            job.error = e.getMessage();
+            job.status = Status.FAILED;
+        } finally {
+            job.completedAt = LocalDateTime.now();
+        }
+    }
+
+    private TransformJobResponse toResponse(Job job) {
+        return new TransformJobResponse(job.id, job.status.name(), job.sourceImageId,
+                job.result != null ? new ImageResponse(job.result) : null,
+                job.error, job.submittedAt, job.completedAt);
+    }
+}
@@ -2,19 +2,24 @@ package com.example.images.service;
 
 import com.example.images.entity.User;
 import com.example.images.exception.CustomException;
-import com.example.images.repository.UserRepository;
+import com.example.images.security.UserDetailsServiceImpl;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
 @Service
 public class UserService {
 
     @Autowired
-    private UserRepository userRepository;
+    private UserDetailsServiceImpl userDetailsService;
 
+    /**
+     * The user resolved by the JWT filter is already in the security context; other principal
+     * types fall back to the cached lookup by username.
+     */
     public User getCurrentUser() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
 
@@ -24,9 +29,17 @@ public class UserService {
 
         Object principal = authentication.getPrincipal();
 
-        if (principal instanceof UserDetails userDetails) {
-            return userRepository.findByUsername(userDetails.getUsername())
-                    .orElseThrow(() -> new CustomException("User not found in database", 404));
+        if (principal instanceof User user) {
+            return user;
+        } else if (principal instanceof UserDetails userDetails) {
+            try {
+                if (userDetailsService.loadUserByUsername(userDetails.getUsername()) instanceof User user) {
+                    return user;
+                }
+            } catch (UsernameNotFoundException e) {
+                // fall through
+            }
+            throw new CustomException("User not found in database", 404);
         } else {
             throw new CustomException("Invalid authentication principal", 401);
         }
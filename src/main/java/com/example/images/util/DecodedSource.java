@@ -0,0 +1,13 @@
+package com.example.images.util;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.Path;
+
+/**
+ * A source image decoded once for several transforms. {@code plan} records which part of the
+ * {@code width} x {@code height} original {@code image} holds (in stored pixels, before the EXIF
+ * {@code orientation} is applied), and at what subsampling.
+ */
+public record DecodedSource(Path path, BufferedImage image, TransformPipeline.DecodePlan plan, int width, int height,
+                            int orientation) {
+}
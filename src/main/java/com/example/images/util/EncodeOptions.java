@@ -0,0 +1,16 @@
+package com.example.images.util;
+
+import com.example.images.dto.TransformationRequest;
+
+/**
+ * Encoder settings from a transformation spec; null means the encoder's default. quality is 1-100,
+ * compressionLevel is the deflate level 0-9.
+ */
+public record EncodeOptions(Integer quality, Boolean progressive, Integer compressionLevel) {
+
+    public static final EncodeOptions DEFAULTS = new EncodeOptions(null, null, null);
+
+    public static EncodeOptions of(TransformationRequest.Transformations t) {
+        return new EncodeOptions(t.getQuality(), t.getProgressive(), t.getCompressionLevel());
+    }
+}
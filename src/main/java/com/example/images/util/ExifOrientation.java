@@ -0,0 +1,112 @@
+package com.example.images.util;
+
+import org.w3c.dom.Node;
+
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import java.awt.geom.AffineTransform;
+import java.io.IOException;
+
+/**
+ * Extracts the EXIF orientation tag from a JPEG's APP1 segment using only the header metadata
+ * the reader has already parsed, and maps it to the transform that turns the stored pixels upright.
+ */
+class ExifOrientation {
+
+    private static final String JPEG_METADATA_FORMAT = "javax_imageio_jpeg_image_1.0";
+    private static final int APP1 = 0xE1;
+    private static final int TAG_ORIENTATION = 0x0112;
+
+    /**
+     * Orientation of the image the reader is positioned on; 1 (upright) for anything but a JPEG
+     * with an orientation tag. The reader must not have been told to ignore metadata.
+     */
+    static int read(ImageReader reader) {
+        try {
+            if (!"jpeg".equalsIgnoreCase(reader.getFormatName())) {
+                return 1;
+            }
+        } catch (IOException e) {
+            return 1;
+        }
+        return readJpeg(reader);
+    }
+
+    /** Orientations 5-8 store the image rotated by a quarter turn, so width and height are swapped. */
+    static boolean swapsAxes(int orientation) {
+        return orientation >= 5 && orientation <= 8;
+    }
+
+    /**
+     * Maps the stored {@code width} x {@code height} pixels onto the upright image; pixel centres
+     * land on pixel centres, so rendering through it is an exact copy.
+     */
+    static AffineTransform toUpright(int orientation, int width, int height) {
+        return switch (orientation) {
+            case 2 -> new AffineTransform(-1, 0, 0, 1, width, 0);      // mirrored left-right
+            case 3 -> new AffineTransform(-1, 0, 0, -1, width, height); // upside down
+            case 4 -> new AffineTransform(1, 0, 0, -1, 0, height);     // mirrored top-bottom
+            case 5 -> new AffineTransform(0, 1, 1, 0, 0, 0);           // transposed
+            case 6 -> new AffineTransform(0, 1, -1, 0, height, 0);     // needs a quarter turn clockwise
+            case 7 -> new AffineTransform(0, -1, -1, 0, height, width); // transversed
+            case 8 -> new AffineTransform(0, -1, 1, 0, 0, width);      // needs a quarter turn counter-clockwise
+            default -> new AffineTransform();
+        };
+    }
+
+    private static int readJpeg(ImageReader reader) {
+        try {
+            IIOMetadata metadata = reader.getImageMetadata(0);
+            if (metadata == null || !JPEG_METADATA_FORMAT.equals(metadata.getNativeMetadataFormatName())) {
+                return 1;
+            }
+            Node root = metadata.getAsTree(JPEG_METADATA_FORMAT);
+            for (Node n = root.getFirstChild(); n != null; n = n.getNextSibling()) {
+                if (!"markerSequence".equals(n.getNodeName())) continue;
+                for (Node m = n.getFirstChild(); m != null; m = m.getNextSibling()) {
+                    if (m instanceof IIOMetadataNode marker && "unknown".equals(m.getNodeName())
+                            && String.valueOf(APP1).equals(marker.getAttribute("MarkerTag"))
+                            && marker.getUserObject() instanceof byte[] data) {
+                        int orientation = parse(data);
+                        if (orientation > 0) return orientation;
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Missing or malformed EXIF is treated as upright
+        }
+        return 1;
+    }
+
+    private static int parse(byte[] d) {
+        // "Exif\0\0" followed by a TIFF header
+        if (d.length < 14 || d[0] != 'E' || d[1] != 'x' || d[2] != 'i' || d[3] != 'f') return -1;
+        int tiff = 6;
+        boolean little = d[tiff] == 'I' && d[tiff + 1] == 'I';
+        int ifd = tiff + u32(d, tiff + 4, little);
+        if (ifd + 2 > d.length) return -1;
+
+        int entries = u16(d, ifd, little);
+        for (int i = 0; i < entries; i++) {
+            int entry = ifd + 2 + i * 12;
+            if (entry + 12 > d.length) break;
+            if (u16(d, entry, little) == TAG_ORIENTATION) {
+                int value = u16(d, entry + 8, little);
+                return value >= 1 && value <= 8 ? value : -1;
+            }
+        }
+        return -1;
+    }
+
+    private static int u16(byte[] d, int off, boolean little) {
+        int a = d[off] & 0xFF, b = d[off + 1] & 0xFF;
+        return little ? (b << 8) | a : (a << 8) | b;
+    }
+
+    private static int u32(byte[] d, int off, boolean little) {
+        return little
+                ? (u16(d, off + 2, true) << 16) | u16(d, off, true)
+                : (u16(d, off, false) << 16) | u16(d, off + 2, false);
+    }
+}
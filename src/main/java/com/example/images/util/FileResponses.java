@@ -0,0 +1,99 @@
+package com.example.images.util;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Builds streaming responses for stored files.
+ * <p>
+ * On Tomcat, whole files and single byte ranges are handed to the connector's sendfile support so the
+ * body goes from page cache to socket without passing through the JVM. Anything else (multi-range,
+ * unsatisfiable ranges, HEAD, in-memory resources) is returned as a {@link Resource} and streamed by
+ * Spring, which also takes care of Range handling there.
+ */
+public class FileResponses {
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    public static ResponseEntity<Resource> serve(HttpServletRequest request, Resource body, MediaType contentType)
+            throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(contentType);
+        return serve(request, body, headers);
+    }
+
+    /**
+     * Serves the body with the given headers (content type, validators). When an ETag is present,
+     * a Range request whose If-Range does not match it gets the full body.
+     */
+    public static ResponseEntity<Resource> serve(HttpServletRequest request, Resource body, HttpHeaders headers)
+            throws IOException {
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        if (!body.isFile()
+                || !HttpMethod.GET.matches(request.getMethod())
+                || !Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            return ResponseEntity.ok().headers(headers).body(body);
+        }
+
+        long length = body.contentLength();
+        long start = 0;
+        long end = length - 1;
+        HttpStatus status = HttpStatus.OK;
+
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (rangeHeader != null && ifRange != null && !ifRange.equals(headers.getETag())) {
+            rangeHeader = null;
+        }
+        if (rangeHeader != null) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(rangeHeader);
+            } catch (IllegalArgumentException e) {
+                ranges = List.of();
+            }
+            if (ranges.size() != 1 || length == 0 || !isSatisfiable(ranges.get(0), length)) {
+                return ResponseEntity.ok().headers(headers).body(body);
+            }
+            start = ranges.get(0).getRangeStart(length);
+            end = ranges.get(0).getRangeEnd(length);
+            status = HttpStatus.PARTIAL_CONTENT;
+            headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+        }
+
+        request.setAttribute(SENDFILE_FILENAME, body.getFile().getCanonicalPath());
+        request.setAttribute(SENDFILE_START, start);
+        request.setAttribute(SENDFILE_END, end + 1);
+        headers.setContentLength(end - start + 1);
+        return ResponseEntity.status(status).headers(headers).build();
+    }
+
+    public static MediaType mediaType(String mimeType) {
+        try {
+            return mimeType != null ? MediaType.parseMediaType(mimeType) : MediaType.APPLICATION_OCTET_STREAM;
+        } catch (IllegalArgumentException e) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+    }
+
+    private static boolean isSatisfiable(HttpRange range, long length) {
+        try {
+            return range.getRangeStart(length) < length;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.images.util;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Writes processed images in one output format. Options the format has no use for are ignored;
+ * {@link #supports} says which ones apply, so cache keys can leave the others out.
+ */
+public interface ImageEncoder {
+
+    enum Option { QUALITY, PROGRESSIVE, COMPRESSION_LEVEL }
+
+    /** Canonical format name, also the file extension (e.g. "jpg"). */
+    String format();
+
+    String mimeType();
+
+    boolean supports(Option option);
+
+    void encode(BufferedImage image, EncodeOptions options, Path target) throws IOException;
+}
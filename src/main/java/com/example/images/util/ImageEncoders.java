@@ -0,0 +1,78 @@
+package com.example.images.util;
+
+import com.example.images.dto.TransformationRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Output formats this instance can write, by canonical name: every installed ImageIO writer, plus
+ * WebP through libwebp when no ImageIO plugin provides it. Specs are checked against it before any
+ * work is queued, so an unsupported format fails the request instead of producing an empty file.
+ */
+public class ImageEncoders {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageEncoders.class);
+
+    private static final Map<String, ImageEncoder> ENCODERS = load();
+
+    public static ImageEncoder forFormat(String format) {
+        return ENCODERS.get(TransformationKeys.normalizeFormat(format));
+    }
+
+    public static Set<String> formats() {
+        return ENCODERS.keySet();
+    }
+
+    /**
+     * Checks the output format and encoder options of a spec. Options the format does not use are
+     * allowed and ignored.
+     */
+    public static void validate(TransformationRequest.Transformations t) {
+        if (forFormat(t.getFormat()) == null) {
+            throw new IllegalArgumentException("Unsupported output format: " + t.getFormat()
+                    + " (supported: " + String.join(", ", formats()) + ")");
+        }
+        if (t.getQuality() != null && (t.getQuality() < 1 || t.getQuality() > 100)) {
+            throw new IllegalArgumentException("quality must be between 1 and 100");
+        }
+        if (t.getCompressionLevel() != null && (t.getCompressionLevel() < 0 || t.getCompressionLevel() > 9)) {
+            throw new IllegalArgumentException("compressionLevel must be between 0 and 9");
+        }
+    }
+
+    private static Map<String, ImageEncoder> load() {
+        Map<String, ImageEncoder> encoders = new TreeMap<>();
+        for (String name : ImageIO.getWriterFormatNames()) {
+            String format = TransformationKeys.normalizeFormat(name);
+            if (encoders.containsKey(format)) continue;
+            Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+            if (writers.hasNext()) {
+                ImageWriter probe = writers.next();
+                encoders.put(format, new ImageIOEncoder(format, probe));
+                probe.dispose();
+            }
+        }
+        if (!encoders.containsKey("webp")) {
+            try {
+                WebPEncoder webp = WebPEncoder.load();
+                if (webp != null) {
+                    encoders.put("webp", webp);
+                } else {
+                    logger.info("libwebp not found, WebP output disabled");
+                }
+            } catch (LinkageError | UnsupportedOperationException e) {
+                logger.warn("WebP encoder unavailable: {}", e.getMessage());
+            }
+        }
+        logger.info("Output formats: {}", encoders.keySet());
+        return Collections.unmodifiableMap(encoders);
+    }
+}
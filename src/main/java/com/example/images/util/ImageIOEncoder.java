@@ -0,0 +1,122 @@
+package com.example.images.util;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.spi.ImageWriterSpi;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+/**
+ * Encoder over an installed ImageIO writer. Quality applies when the writer's default compression
+ * is lossy (JPEG), the compression level when it is deflate (PNG), progressive when the writer can
+ * write progressive JPEG or interlaced PNG/GIF.
+ */
+class ImageIOEncoder implements ImageEncoder {
+
+    private static final String DEFLATE = "Deflate";
+
+    private final String format;
+    private final String mimeType;
+    private final ImageWriterSpi provider;
+    private final String compressionType;
+    private final boolean lossy;
+    private final boolean progressive;
+
+    ImageIOEncoder(String format, ImageWriter probe) {
+        this.format = format;
+        this.provider = probe.getOriginatingProvider();
+        String[] mimeTypes = provider.getMIMETypes();
+        this.mimeType = mimeTypes != null && mimeTypes.length > 0 ? mimeTypes[0] : "application/octet-stream";
+
+        ImageWriteParam param = probe.getDefaultWriteParam();
+        String type = null;
+        boolean isLossy = false;
+        if (param.canWriteCompressed()) {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            type = param.getCompressionType() != null ? param.getCompressionType() : param.getCompressionTypes()[0];
+            param.setCompressionType(type);
+            isLossy = !param.isCompressionLossless();
+        }
+        this.compressionType = type;
+        this.lossy = isLossy;
+        this.progressive = param.canWriteProgressive();
+    }
+
+    @Override
+    public String format() {
+        return format;
+    }
+
+    @Override
+    public String mimeType() {
+        return mimeType;
+    }
+
+    @Override
+    public boolean supports(Option option) {
+        return switch (option) {
+            case QUALITY -> lossy;
+            case COMPRESSION_LEVEL -> DEFLATE.equals(compressionType);
+            case PROGRESSIVE -> progressive;
+        };
+    }
+
+    @Override
+    public void encode(BufferedImage image, EncodeOptions options, Path target) throws IOException {
+        if (!provider.canEncodeImage(image) && image.getColorModel().hasAlpha()) {
+            image = flatten(image); // JPEG and BMP have no alpha channel
+        }
+        // Writers keep per-image state, so each encode gets its own
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        if (!writers.hasNext()) {
+            throw new IOException("No image writer for format " + format);
+        }
+        ImageWriter writer = writers.next();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(target.toFile())) {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param(writer, options));
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private ImageWriteParam param(ImageWriter writer, EncodeOptions options) {
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        Float compressionQuality = null;
+        if (options.quality() != null && supports(Option.QUALITY)) {
+            compressionQuality = options.quality() / 100f;
+        } else if (options.compressionLevel() != null && supports(Option.COMPRESSION_LEVEL)) {
+            // The JDK PNG writer maps quality 1.0 to level 0 (stored) and 0.0 to level 9
+            compressionQuality = 1f - options.compressionLevel() / 9f;
+        }
+        if (compressionQuality != null) {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionType(compressionType);
+            param.setCompressionQuality(compressionQuality);
+        }
+        if (options.progressive() != null && progressive) {
+            param.setProgressiveMode(options.progressive() ? ImageWriteParam.MODE_DEFAULT : ImageWriteParam.MODE_DISABLED);
+        }
+        return param;
+    }
+
+    private static BufferedImage flatten(BufferedImage image) {
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = rgb.createGraphics();
+        try {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, image.getWidth(), image.getHeight());
+            g.drawImage(image, 0, 0, null);
+        } finally {
+            g.dispose();
+        }
+        return rgb;
+    }
+}
@@ -0,0 +1,8 @@
+package com.example.images.util;
+
+/**
+ * Header-level facts about an encoded image. Orientation is the EXIF orientation tag (1 = upright);
+ * width and height are those of the upright image, i.e. swapped for orientations 5-8.
+ */
+public record ImageMetadata(int width, int height, String format, String mimeType, int orientation) {
+}
@@ -3,28 +3,227 @@ package com.example.images.util;
 import com.example.images.dto.TransformationRequest;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
 
 public class ImageProcessorUtil {
 
-    public static int[] getImageDimensions(String filePath) {
+    /**
+     * Reads dimensions, format, MIME type and EXIF orientation from the image header only;
+     * no pixel data is decoded.
+     */
+    public static ImageMetadata probe(Path path) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(path.toFile())) {
+            if (in == null) throw new IOException("Invalid image file");
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) throw new IOException("Invalid image file");
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, false);
+                String format = reader.getFormatName().toLowerCase(Locale.ROOT);
+                String[] mimeTypes = reader.getOriginatingProvider().getMIMETypes();
+                String mimeType = mimeTypes != null && mimeTypes.length > 0 ? mimeTypes[0] : "application/octet-stream";
+                int orientation = ExifOrientation.read(reader);
+                boolean swap = ExifOrientation.swapsAxes(orientation);
+                return new ImageMetadata(swap ? reader.getHeight(0) : reader.getWidth(0),
+                        swap ? reader.getWidth(0) : reader.getHeight(0), format, mimeType, orientation);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Transforms {@code originalPath} into {@code target}.
+     */
+    public static TransformedImage applyTransformations(Path originalPath, TransformationRequest.Transformations t,
+                                                        Path target) throws IOException {
+        String format = outputFormat(t);
+
+        PipelineMetrics.bytesRead(PipelineMetrics.TRANSFORM, originalPath.toFile().length());
+        BufferedImage processed = decodeAndTransform(originalPath, t, format);
+        return watermarkAndWrite(processed, t, format, target);
+    }
+
+    /**
+     * Renders one spec from a source decoded by {@link #decodeShared} into {@code target}. The
+     * shared pixels are left untouched, so several specs may render from the same source
+     * concurrently.
+     */
+    public static TransformedImage applyTransformations(DecodedSource source, TransformationRequest.Transformations t,
+                                                        Path target) throws IOException {
+        String format = outputFormat(t);
+
+        long start = PipelineMetrics.start();
+        BufferedImage processed = TransformPipeline.compile(source.width(), source.height(), source.orientation(), t)
+                .forDecoded(source.plan())
+                .executeDetached(source.image());
+        PipelineMetrics.stage(PipelineMetrics.TRANSFORM, format, start);
+        return watermarkAndWrite(processed, t, format, target);
+    }
+
+    /**
+     * Format a spec is encoded in: the requested one, or jpg.
+     */
+    public static String outputFormat(TransformationRequest.Transformations t) {
+        return TransformationKeys.normalizeFormat(t.getFormat());
+    }
+
+    private static TransformedImage watermarkAndWrite(BufferedImage processed, TransformationRequest.Transformations t,
+                                                      String format, Path transformedPath)
+            throws IOException {
+        // Watermark
+        if (t.getWatermark() != null) {
+            long start = PipelineMetrics.start();
+            processed = addWatermark(processed, t.getWatermark());
+            PipelineMetrics.stage(PipelineMetrics.WATERMARK, format, start);
+        }
+
+        // Encode next to the target and move it into place, so a reader never sees a partial file
+        Path temp = Files.createTempFile(transformedPath.toAbsolutePath().getParent(),
+                "." + transformedPath.getFileName() + "-", ".tmp");
         try {
-            BufferedImage img = ImageIO.read(new File(filePath));
-            if (img == null) throw new IOException("Invalid image file");
-            return new int[]{img.getWidth(), img.getHeight()};
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to get dimensions: " + e.getMessage());
+            long start = PipelineMetrics.start();
+            encoderFor(format).encode(processed, EncodeOptions.of(t), temp);
+            PipelineMetrics.stage(PipelineMetrics.ENCODE, format, start);
+            PipelineMetrics.bytesWritten(PipelineMetrics.TRANSFORM, format, Files.size(temp));
+            Files.move(temp, transformedPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
         }
+
+        // Dimensions are known from the raster we just wrote; no need to read the file back
+        return new TransformedImage(transformedPath, new ImageMetadata(processed.getWidth(), processed.getHeight(),
+                format, mimeTypeForFormat(format), 1));
     }
 
-    public static Path applyTransformations(Path originalPath, TransformationRequest.Transformations t) throws IOException {
-        BufferedImage original = ImageIO.read(originalPath.toFile());
-        if (original == null) throw new IOException("Invalid image file");
+    /**
+     * Decodes a source once for several specs: the union of the regions they read, at the finest
+     * subsampling any of them needs. Specs that do not fit the source (e.g. a crop out of bounds)
+     * are left out here and fail when rendered.
+     */
+    public static DecodedSource decodeShared(Path path, List<TransformationRequest.Transformations> specs)
+            throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(path.toFile())) {
+            if (in == null) throw new IOException("Invalid image file");
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) throw new IOException("Invalid image file");
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, false);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                int orientation = ExifOrientation.read(reader);
+
+                Rectangle region = null;
+                boolean fullFrame = false;
+                int subsampling = Integer.MAX_VALUE;
+                for (TransformationRequest.Transformations t : specs) {
+                    TransformPipeline.DecodePlan plan;
+                    try {
+                        plan = TransformPipeline.compile(width, height, orientation, t).decodePlan();
+                    } catch (IOException e) {
+                        continue;
+                    }
+                    if (plan.region() == null) {
+                        fullFrame = true;
+                    } else {
+                        region = region == null ? new Rectangle(plan.region()) : region.union(plan.region());
+                    }
+                    subsampling = Math.min(subsampling, plan.subsampling());
+                }
+                TransformPipeline.DecodePlan shared = new TransformPipeline.DecodePlan(fullFrame ? null : region,
+                        subsampling == Integer.MAX_VALUE ? 1 : subsampling);
 
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (shared.region() != null) {
+                    param.setSourceRegion(shared.region());
+                }
+                if (shared.subsampling() > 1) {
+                    param.setSourceSubsampling(shared.subsampling(), shared.subsampling(), 0, 0);
+                }
+                PipelineMetrics.bytesRead(PipelineMetrics.TRANSFORM, path.toFile().length());
+                long start = PipelineMetrics.start();
+                BufferedImage decoded = reader.read(0, param);
+                PipelineMetrics.stage(PipelineMetrics.DECODE, null, start);
+                PipelineMetrics.pixelsProcessed(PipelineMetrics.TRANSFORM, (long) decoded.getWidth() * decoded.getHeight());
+                return new DecodedSource(path, decoded, shared, width, height, orientation);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Decodes only what the pipeline needs (source region and subsampling from its decode plan)
+     * and runs the pipeline on the result. {@code format} is only used to tag stage timings.
+     */
+    static BufferedImage decodeAndTransform(Path path, TransformationRequest.Transformations t, String format)
+            throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(path.toFile())) {
+            if (in == null) throw new IOException("Invalid image file");
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) throw new IOException("Invalid image file");
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, false);
+                TransformPipeline pipeline = TransformPipeline.compile(reader.getWidth(0), reader.getHeight(0),
+                        ExifOrientation.read(reader), t);
+                TransformPipeline.DecodePlan plan = pipeline.decodePlan();
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (plan.region() != null) {
+                    param.setSourceRegion(plan.region());
+                }
+                if (plan.subsampling() > 1) {
+                    param.setSourceSubsampling(plan.subsampling(), plan.subsampling(), 0, 0);
+                }
+                long start = PipelineMetrics.start();
+                BufferedImage decoded = reader.read(0, param);
+                PipelineMetrics.stage(PipelineMetrics.DECODE, format, start);
+                PipelineMetrics.pixelsProcessed(PipelineMetrics.TRANSFORM, (long) decoded.getWidth() * decoded.getHeight());
+
+                start = PipelineMetrics.start();
+                BufferedImage transformed = pipeline.forDecoded(plan).execute(decoded);
+                PipelineMetrics.stage(PipelineMetrics.TRANSFORM, format, start);
+                return transformed;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static ImageEncoder encoderFor(String format) throws IOException {
+        ImageEncoder encoder = ImageEncoders.forFormat(format);
+        if (encoder == null) {
+            throw new IOException("No image writer for format " + format);
+        }
+        return encoder;
+    }
+
+    public static String mimeTypeForFormat(String format) {
+        ImageEncoder encoder = ImageEncoders.forFormat(format);
+        return encoder != null ? encoder.mimeType() : "application/octet-stream";
+    }
+
+    /**
+     * Reference implementation that applies each step to its own intermediate image.
+     * {@link TransformPipeline} must stay equivalent to this; it is kept for comparisons and benchmarks.
+     */
+    public static BufferedImage applyStepwise(BufferedImage original, TransformationRequest.Transformations t) {
         BufferedImage processed = original;
 
         // Resize
@@ -67,21 +266,7 @@ public class ImageProcessorUtil {
             processed = addWatermark(processed, t.getWatermark());
         }
 
-        // Output format
-        String format = t.getFormat() != null ? t.getFormat() : "jpg";
-
-        // Create output filename safely
-        String originalName = originalPath.getFileName().toString();
-        int dotIndex = originalName.lastIndexOf('.');
-        String baseName = (dotIndex != -1) ? originalName.substring(0, dotIndex) : originalName;
-        String transformedName = baseName + "_transformed." + format;
-
-        Path transformedPath = originalPath.resolveSibling(transformedName);
-        File outputFile = transformedPath.toFile();
-
-        ImageIO.write(processed, format, outputFile);
-
-        return transformedPath;
+        return processed;
     }
 
     private static BufferedImage resize(BufferedImage img, int width, int height) {
@@ -0,0 +1,125 @@
+package com.example.images.util;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Identifies an image from its leading bytes and reads its dimensions from the header, without
+ * ImageIO or a file. Used on the streaming upload path, where only the first chunk of the body
+ * has been seen when the format has to be decided.
+ */
+public class ImageSniffer {
+
+    /** Bytes needed to recognise every supported format. */
+    public static final int MAGIC_BYTES = 12;
+
+    public record Format(String name, String extension, String mimeType) {
+    }
+
+    private static final Format JPEG = new Format("jpeg", "jpg", "image/jpeg");
+    private static final Format PNG = new Format("png", "png", "image/png");
+    private static final Format GIF = new Format("gif", "gif", "image/gif");
+    private static final Format BMP = new Format("bmp", "bmp", "image/bmp");
+    private static final Format TIFF = new Format("tiff", "tiff", "image/tiff");
+    private static final Format WEBP = new Format("webp", "webp", "image/webp");
+
+    /**
+     * The format announced by the magic bytes, or null when unrecognised or when no ImageIO
+     * reader is installed for it.
+     */
+    public static Format sniff(byte[] head, int length) {
+        Format format = null;
+        if (startsWith(head, length, 0xFF, 0xD8, 0xFF)) {
+            format = JPEG;
+        } else if (startsWith(head, length, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+            format = PNG;
+        } else if (startsWith(head, length, 'G', 'I', 'F', '8') && length >= 6
+                && (head[4] == '7' || head[4] == '9') && head[5] == 'a') {
+            format = GIF;
+        } else if (startsWith(head, length, 'B', 'M')) {
+            format = BMP;
+        } else if (startsWith(head, length, 'I', 'I', 0x2A, 0x00) || startsWith(head, length, 'M', 'M', 0x00, 0x2A)) {
+            format = TIFF;
+        } else if (startsWith(head, length, 'R', 'I', 'F', 'F') && length >= 12
+                && head[8] == 'W' && head[9] == 'E' && head[10] == 'B' && head[11] == 'P') {
+            format = WEBP;
+        }
+        return format != null && ImageIO.getImageReadersByFormatName(format.name()).hasNext() ? format : null;
+    }
+
+    /**
+     * {width, height} from the header, or null when the header is not within {@code head}
+     * (e.g. a JPEG whose frame header follows a large EXIF block) or the format is not parsed here.
+     */
+    public static int[] dimensions(Format format, byte[] head, int length) {
+        if (format == PNG) {
+            // IHDR is always the first chunk
+            return length >= 24 ? valid(int32BE(head, 16), int32BE(head, 20)) : null;
+        }
+        if (format == GIF) {
+            return length >= 10 ? valid(uint16LE(head, 6), uint16LE(head, 8)) : null;
+        }
+        if (format == BMP) {
+            if (length < 26) return null;
+            if (int32LE(head, 14) == 12) { // OS/2 BITMAPCOREHEADER
+                return valid(uint16LE(head, 18), uint16LE(head, 20));
+            }
+            return valid(int32LE(head, 18), Math.abs(int32LE(head, 22))); // negative height = top-down
+        }
+        if (format == JPEG) {
+            return jpegDimensions(head, length);
+        }
+        return null;
+    }
+
+    private static int[] jpegDimensions(byte[] head, int length) {
+        int pos = 2;
+        while (pos + 3 < length) {
+            if ((head[pos] & 0xFF) != 0xFF) return null;
+            int marker = head[pos + 1] & 0xFF;
+            if (marker == 0xFF) { // fill byte
+                pos++;
+                continue;
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD8)) { // no length field
+                pos += 2;
+                continue;
+            }
+            boolean startOfFrame = marker >= 0xC0 && marker <= 0xCF
+                    && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+            if (startOfFrame) {
+                // FF Cn length(2) precision(1) height(2) width(2)
+                return pos + 9 <= length ? valid(uint16BE(head, pos + 7), uint16BE(head, pos + 5)) : null;
+            }
+            pos += 2 + uint16BE(head, pos + 2);
+        }
+        return null;
+    }
+
+    private static int[] valid(int width, int height) {
+        return width > 0 && height > 0 ? new int[]{width, height} : null;
+    }
+
+    private static boolean startsWith(byte[] head, int length, int... magic) {
+        if (length < magic.length) return false;
+        for (int i = 0; i < magic.length; i++) {
+            if ((head[i] & 0xFF) != magic[i]) return false;
+        }
+        return true;
+    }
+
+    private static int uint16BE(byte[] b, int off) {
+        return ((b[off] & 0xFF) << 8) | (b[off + 1] & 0xFF);
+    }
+
+    private static int uint16LE(byte[] b, int off) {
+        return (b[off] & 0xFF) | ((b[off + 1] & 0xFF) << 8);
+    }
+
+    private static int int32BE(byte[] b, int off) {
+        return (uint16BE(b, off) << 16) | uint16BE(b, off + 2);
+    }
+
+    private static int int32LE(byte[] b, int off) {
+        return uint16LE(b, off) | (uint16LE(b, off + 2) << 16);
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.images.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits per-pixel work into horizontal row bands and runs them on the image processing pool.
+ * Images below the configured pixel threshold, or calls made before a pool is configured,
+ * run on the calling thread.
+ */
+public class ParallelTiles {
+
+    // Rows of work per band are at least this many pixels, so tiny bands don't drown in task overhead
+    private static final int MIN_BAND_PIXELS = 64 * 1024;
+
+    private static volatile ForkJoinPool pool;
+    private static volatile long thresholdPixels = Long.MAX_VALUE;
+
+    @FunctionalInterface
+    public interface Band {
+        void run(int yStart, int yEnd);
+    }
+
+    public static void configure(ForkJoinPool processingPool, long parallelThresholdPixels) {
+        pool = processingPool;
+        thresholdPixels = parallelThresholdPixels;
+    }
+
+    public static void forEachBand(int width, int height, Band band) {
+        ForkJoinPool p = pool;
+        long pixels = (long) width * height;
+        if (p == null || pixels < thresholdPixels || height < 2) {
+            band.run(0, height);
+            return;
+        }
+
+        int rowsPerBand = Math.max(1, MIN_BAND_PIXELS / Math.max(1, width));
+        int bands = Math.min(p.getParallelism() * 4, (height + rowsPerBand - 1) / rowsPerBand);
+        if (bands < 2) {
+            band.run(0, height);
+            return;
+        }
+
+        List<RecursiveAction> tasks = new ArrayList<>(bands);
+        for (int i = 0; i < bands; i++) {
+            int yStart = (int) ((long) height * i / bands);
+            int yEnd = (int) ((long) height * (i + 1) / bands);
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    band.run(yStart, yEnd);
+                }
+            });
+        }
+
+        if (ForkJoinTask.inForkJoinPool() && ForkJoinTask.getPool() == p) {
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            p.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.images.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer meters for the image path, usable from the static pipeline code.
+ * <p>
+ * Format tags are normalized like transform specs (jpeg and jpg both report as jpg).
+ * Everything is a no-op until {@link #bind(MeterRegistry)} is called. Meters are created once per
+ * tag combination and kept in maps, so recording costs two {@code nanoTime} calls and a couple of
+ * map reads per stage. Format tags are limited to formats {@link ImageEncoders} can write
+ * (anything else becomes "other") to keep the series count bounded.
+ */
+public class PipelineMetrics {
+
+    public static final String DECODE = "decode";
+    public static final String TRANSFORM = "transform";
+    public static final String WATERMARK = "watermark";
+    public static final String ENCODE = "encode";
+
+    // Every output format, including WebP when it is written through libwebp rather than ImageIO
+    private static final Set<String> KNOWN_FORMATS = ImageEncoders.formats();
+
+    private static volatile MeterRegistry registry;
+
+    private static final ConcurrentHashMap<String, ConcurrentHashMap<String, Timer>> stageTimers = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, ConcurrentHashMap<String, Timer>> operationTimers = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, ConcurrentHashMap<String, Counter>> bytesWritten = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Counter> bytesRead = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Counter> pixels = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Counter> rateLimited = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Counter[]> cacheRequests = new ConcurrentHashMap<>();
+
+    public static void bind(MeterRegistry meterRegistry) {
+        registry = meterRegistry;
+    }
+
+    /** Start timestamp for {@link #stage} or {@link #operation}; 0 when metrics are off. */
+    public static long start() {
+        return registry != null ? System.nanoTime() : 0L;
+    }
+
+    /** One step inside a transform: decode, transform, watermark or encode. */
+    public static void stage(String stage, String format, long startNanos) {
+        MeterRegistry r = registry;
+        if (r == null) return;
+        Timer timer = stageTimers.computeIfAbsent(stage, s -> new ConcurrentHashMap<>())
+                .computeIfAbsent(formatTag(format), f -> timer(r, "image.pipeline.stage", "stage", stage, f));
+        timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /** A whole service-level operation: upload, transform or retrieve. */
+    public static void operation(String operation, String format, long startNanos) {
+        MeterRegistry r = registry;
+        if (r == null) return;
+        Timer timer = operationTimers.computeIfAbsent(operation, o -> new ConcurrentHashMap<>())
+                .computeIfAbsent(formatTag(format), f -> timer(r, "image.operation", "operation", operation, f));
+        timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public static void bytesRead(String operation, long bytes) {
+        Counter counter = counter(bytesRead, "image.bytes.read", operation, "bytes");
+        if (counter != null) counter.increment(bytes);
+    }
+
+    public static void bytesWritten(String operation, String format, long bytes) {
+        MeterRegistry r = registry;
+        if (r == null) return;
+        bytesWritten.computeIfAbsent(operation, o -> new ConcurrentHashMap<>())
+                .computeIfAbsent(formatTag(format), f -> Counter.builder("image.bytes.written")
+                        .tag("operation", operation)
+                        .tag("format", f)
+                        .baseUnit("bytes")
+                        .register(r))
+                .increment(bytes);
+    }
+
+    public static void pixelsProcessed(String operation, long count) {
+        Counter counter = counter(pixels, "image.pixels.processed", operation, "pixels");
+        if (counter != null) counter.increment(count);
+    }
+
+    public static void rateLimited(String operation) {
+        Counter counter = counter(rateLimited, "image.ratelimit.rejections", operation, null);
+        if (counter != null) counter.increment();
+    }
+
+    public static void cacheLookup(String cache, boolean hit) {
+        MeterRegistry r = registry;
+        if (r == null) return;
+        Counter[] counters = cacheRequests.computeIfAbsent(cache, c -> new Counter[]{
+                Counter.builder("image.cache.requests").tag("cache", c).tag("result", "hit").register(r),
+                Counter.builder("image.cache.requests").tag("cache", c).tag("result", "miss").register(r)});
+        counters[hit ? 0 : 1].increment();
+    }
+
+    static String formatTag(String format) {
+        if (format == null) return "none";
+        String f = TransformationKeys.normalizeFormat(format);
+        return KNOWN_FORMATS.contains(f) ? f : "other";
+    }
+
+    private static Timer timer(MeterRegistry r, String name, String key, String value, String format) {
+        return Timer.builder(name)
+                .tag(key, value)
+                .tag("format", format)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(30))
+                .register(r);
+    }
+
+    private static Counter counter(ConcurrentHashMap<String, Counter> counters, String name, String operation,
+                                   String baseUnit) {
+        MeterRegistry r = registry;
+        if (r == null) return null;
+        return counters.computeIfAbsent(operation,
+                o -> Counter.builder(name).tag("operation", o).baseUnit(baseUnit).register(r));
+    }
+}
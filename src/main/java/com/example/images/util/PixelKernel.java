@@ -0,0 +1,10 @@
+package com.example.images.util;
+
+/**
+ * A per-pixel colour operation applied in place to packed {@code 0xAARRGGBB} pixels.
+ * Implementations work directly on the backing array of an image and must not allocate per pixel.
+ */
+public interface PixelKernel {
+
+    void apply(int[] pixels, int offset, int length);
+}
@@ -0,0 +1,116 @@
+package com.example.images.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+
+/**
+ * Registry of {@link PixelKernel}s and helpers to run them over the raw {@code DataBuffer} of an image.
+ * Coefficients are Q16 fixed point, so results may differ from the floating point formulas by one level.
+ */
+public class PixelKernels {
+
+    private static final Logger logger = LoggerFactory.getLogger(PixelKernels.class);
+
+    static final int SEPIA_RR = q16(0.393), SEPIA_RG = q16(0.769), SEPIA_RB = q16(0.189);
+    static final int SEPIA_GR = q16(0.349), SEPIA_GG = q16(0.686), SEPIA_GB = q16(0.168);
+    static final int SEPIA_BR = q16(0.272), SEPIA_BG = q16(0.534), SEPIA_BB = q16(0.131);
+
+    static final PixelKernel SCALAR_SEPIA = (pixels, offset, length) -> {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            int rgb = pixels[i];
+            int r = (rgb >> 16) & 0xFF;
+            int g = (rgb >> 8) & 0xFF;
+            int b = rgb & 0xFF;
+
+            int tr = Math.min(255, (SEPIA_RR * r + SEPIA_RG * g + SEPIA_RB * b) >> 16);
+            int tg = Math.min(255, (SEPIA_GR * r + SEPIA_GG * g + SEPIA_GB * b) >> 16);
+            int tb = (SEPIA_BR * r + SEPIA_BG * g + SEPIA_BB * b) >> 16;
+            pixels[i] = 0xFF000000 | (tr << 16) | (tg << 8) | tb;
+        }
+    };
+
+    private static final PixelKernel SEPIA = loadVectorKernel("com.example.images.util.VectorSepiaKernel", SCALAR_SEPIA);
+
+    public static PixelKernel sepia() {
+        return SEPIA;
+    }
+
+    /**
+     * Runs the kernel over every pixel of an INT_RGB or INT_ARGB image, including sub-images.
+     */
+    public static void applyInPlace(BufferedImage img, PixelKernel kernel) {
+        Raster raster = img.getRaster();
+        if (!(raster.getDataBuffer() instanceof DataBufferInt buffer)
+                || !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel sm)) {
+            throw new IllegalArgumentException("Packed int image required, got type " + img.getType());
+        }
+        int[] data = buffer.getData();
+        int stride = sm.getScanlineStride();
+        int w = img.getWidth();
+        int h = img.getHeight();
+        int origin = buffer.getOffset()
+                + sm.getOffset(-raster.getSampleModelTranslateX(), -raster.getSampleModelTranslateY());
+
+        ParallelTiles.forEachBand(w, h, (yStart, yEnd) -> {
+            if (stride == w) {
+                kernel.apply(data, origin + yStart * w, (yEnd - yStart) * w);
+                return;
+            }
+            for (int y = yStart; y < yEnd; y++) {
+                kernel.apply(data, origin + y * stride, w);
+            }
+        });
+    }
+
+    /**
+     * Maps each sample of a TYPE_BYTE_GRAY image through a 256-entry colour table into an INT_RGB image.
+     */
+    public static BufferedImage mapGray(BufferedImage gray, int[] lut) {
+        Raster raster = gray.getRaster();
+        PixelInterleavedSampleModel sm = (PixelInterleavedSampleModel) raster.getSampleModel();
+        byte[] src = ((DataBufferByte) raster.getDataBuffer()).getData();
+        int stride = sm.getScanlineStride();
+        int origin = raster.getDataBuffer().getOffset()
+                + sm.getOffset(-raster.getSampleModelTranslateX(), -raster.getSampleModelTranslateY());
+
+        int w = gray.getWidth();
+        int h = gray.getHeight();
+        BufferedImage out = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        int[] dst = ((DataBufferInt) out.getRaster().getDataBuffer()).getData();
+        ParallelTiles.forEachBand(w, h, (yStart, yEnd) -> {
+            for (int y = yStart; y < yEnd; y++) {
+                int s = origin + y * stride;
+                int d = y * w;
+                for (int x = 0; x < w; x++) {
+                    dst[d + x] = lut[src[s + x] & 0xFF];
+                }
+            }
+        });
+        return out;
+    }
+
+    private static int q16(double coefficient) {
+        return (int) Math.round(coefficient * 65536);
+    }
+
+    private static PixelKernel loadVectorKernel(String className, PixelKernel fallback) {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return fallback;
+        }
+        try {
+            PixelKernel kernel = (PixelKernel) Class.forName(className).getDeclaredConstructor().newInstance();
+            logger.info("Using vectorized kernel {}", className);
+            return kernel;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            logger.warn("Vector kernel {} unavailable, using scalar fallback: {}", className, e.getMessage());
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.images.util;
+
+import com.example.images.dto.TransformationRequest;
+
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A parsed rendition preset such as "150x150 jpg" or "1024w png". A zero bound is unconstrained.
+ */
+public record RenditionPreset(String name, int maxWidth, int maxHeight, String format) {
+
+    private static final Pattern SPEC = Pattern.compile("\\s*(?:(\\d+)x(\\d+)|(\\d+)w|(\\d+)h)\\s+(\\w+)\\s*");
+
+    public static RenditionPreset parse(String name, String spec) {
+        Matcher m = SPEC.matcher(spec);
+        if (!m.matches()) {
+            throw new IllegalArgumentException("Invalid rendition preset " + name + ": '" + spec
+                    + "', expected '<W>x<H> <format>', '<W>w <format>' or '<H>h <format>'");
+        }
+        int w = m.group(1) != null ? Integer.parseInt(m.group(1)) : m.group(3) != null ? Integer.parseInt(m.group(3)) : 0;
+        int h = m.group(2) != null ? Integer.parseInt(m.group(2)) : m.group(4) != null ? Integer.parseInt(m.group(4)) : 0;
+        String format = TransformationKeys.normalizeFormat(m.group(5).toLowerCase(Locale.ROOT));
+        if (ImageEncoders.forFormat(format) == null) {
+            throw new IllegalArgumentException("Rendition preset " + name + " uses unsupported format " + format);
+        }
+        return new RenditionPreset(name, w, h, format);
+    }
+
+    /**
+     * Spec that scales a {@code srcWidth} x {@code srcHeight} image into this preset's bounds.
+     */
+    public TransformationRequest.Transformations toTransformations(int srcWidth, int srcHeight) {
+        double scale = 1.0;
+        if (maxWidth > 0) scale = Math.min(scale, (double) maxWidth / srcWidth);
+        if (maxHeight > 0) scale = Math.min(scale, (double) maxHeight / srcHeight);
+
+        TransformationRequest.Transformations t = new TransformationRequest.Transformations();
+        if (scale < 1.0) {
+            TransformationRequest.Resize resize = new TransformationRequest.Resize();
+            resize.setWidth(Math.max(1, (int) Math.round(srcWidth * scale)));
+            resize.setHeight(Math.max(1, (int) Math.round(srcHeight * scale)));
+            t.setResize(resize);
+        }
+        t.setFormat(format);
+        return t;
+    }
+}
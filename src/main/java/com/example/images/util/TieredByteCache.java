@@ -0,0 +1,220 @@
+package com.example.images.util;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.cache.CacheMeterBinder;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Spring {@link org.springframework.cache.Cache} for {@code byte[]} payloads with a byte budget.
+ * <p>
+ * The first tier is a Caffeine heap cache weighed by payload size. When it is enabled, entries
+ * evicted from the heap for size are demoted to a second tier of direct {@link ByteBuffer}s with its
+ * own budget, and promoted back to the heap on the next hit. Direct memory is released when the
+ * buffers are collected, so {@code -XX:MaxDirectMemorySize} should leave headroom above the budget.
+ */
+public class TieredByteCache implements org.springframework.cache.Cache {
+
+    // Rough per-entry cost of the key, node and array header on top of the payload
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private final String name;
+    private final Cache<Object, byte[]> heap;
+    private final Cache<Object, ByteBuffer> offHeap;
+
+    // Across both tiers; a demotion to the second tier is not an eviction, nor is a promotion a put
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public TieredByteCache(String name, long heapBytes, long offHeapBytes, Duration ttl) {
+        this.name = name;
+        this.offHeap = offHeapBytes > 0
+                ? Caffeine.newBuilder()
+                        .maximumWeight(offHeapBytes)
+                        .weigher((Object k, ByteBuffer v) -> v.capacity() + ENTRY_OVERHEAD_BYTES)
+                        .expireAfterWrite(ttl)
+                        .removalListener((Object k, ByteBuffer v, RemovalCause cause) -> {
+                            if (cause.wasEvicted()) {
+                                evictions.increment();
+                            }
+                        })
+                        .recordStats()
+                        .build()
+                : null;
+        this.heap = Caffeine.newBuilder()
+                .maximumWeight(heapBytes)
+                .weigher((Object k, byte[] v) -> v.length + ENTRY_OVERHEAD_BYTES)
+                .expireAfterWrite(ttl)
+                .removalListener((Object k, byte[] v, RemovalCause cause) -> {
+                    if (offHeap != null && k != null && v != null && cause == RemovalCause.SIZE) {
+                        ByteBuffer buffer = ByteBuffer.allocateDirect(v.length);
+                        buffer.put(v).flip();
+                        offHeap.put(k, buffer);
+                    } else if (cause.wasEvicted()) {
+                        evictions.increment();
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return heap;
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        byte[] value = lookup(key);
+        return value != null ? new SimpleValueWrapper(value) : null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        byte[] value = lookup(key);
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]");
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        byte[] value = lookup(key);
+        if (value != null) {
+            return (T) value;
+        }
+        try {
+            T loaded = valueLoader.call();
+            put(key, loaded);
+            return loaded;
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        if (!(value instanceof byte[] bytes)) {
+            throw new IllegalArgumentException("Only byte[] values can be cached in " + name);
+        }
+        heap.put(key, bytes);
+        puts.increment();
+    }
+
+    @Override
+    public void evict(Object key) {
+        heap.invalidate(key);
+        if (offHeap != null) {
+            offHeap.invalidate(key);
+        }
+    }
+
+    @Override
+    public void clear() {
+        heap.invalidateAll();
+        if (offHeap != null) {
+            offHeap.invalidateAll();
+        }
+    }
+
+    private byte[] lookup(Object key) {
+        byte[] value = heap.getIfPresent(key);
+        if (value != null || offHeap == null) {
+            return value;
+        }
+        ByteBuffer buffer = offHeap.getIfPresent(key);
+        if (buffer == null) {
+            return null;
+        }
+        value = new byte[buffer.capacity()];
+        buffer.duplicate().get(value);
+        offHeap.invalidate(key);
+        heap.put(key, value);
+        return value;
+    }
+
+    /**
+     * Publishes the standard {@code cache.*} meters for the cache as a whole (Boot only binds them
+     * for caches it recognises, such as Caffeine's), plus hits, misses, evictions and resident
+     * bytes for each tier, tagged with tier=heap|offheap.
+     */
+    public void bindTo(MeterRegistry registry, Iterable<Tag> tags) {
+        new Metrics(this, tags).bindTo(registry);
+    }
+
+    private static final class Metrics extends CacheMeterBinder<TieredByteCache> {
+
+        private final TieredByteCache cache;
+
+        Metrics(TieredByteCache cache, Iterable<Tag> tags) {
+            super(cache, cache.name, tags);
+            this.cache = cache;
+        }
+
+        @Override
+        protected Long size() {
+            return cache.heap.estimatedSize() + (cache.offHeap != null ? cache.offHeap.estimatedSize() : 0);
+        }
+
+        @Override
+        protected long hitCount() {
+            return cache.heap.stats().hitCount() + (cache.offHeap != null ? cache.offHeap.stats().hitCount() : 0);
+        }
+
+        // Every heap miss goes on to the second tier when there is one
+        @Override
+        protected Long missCount() {
+            return (cache.offHeap != null ? cache.offHeap : cache.heap).stats().missCount();
+        }
+
+        @Override
+        protected Long evictionCount() {
+            return cache.evictions.sum();
+        }
+
+        @Override
+        protected long putCount() {
+            return cache.puts.sum();
+        }
+
+        @Override
+        protected void bindImplementationSpecificMetrics(MeterRegistry registry) {
+            cache.bindTier(registry, "heap", cache.heap);
+            if (cache.offHeap != null) {
+                cache.bindTier(registry, "offheap", cache.offHeap);
+            }
+        }
+    }
+
+    private void bindTier(MeterRegistry registry, String tier, Cache<Object, ?> cache) {
+        Tags tags = Tags.of("cache", name, "tier", tier);
+        FunctionCounter.builder("cache.tier.hits", cache, c -> c.stats().hitCount()).tags(tags).register(registry);
+        FunctionCounter.builder("cache.tier.misses", cache, c -> c.stats().missCount()).tags(tags).register(registry);
+        FunctionCounter.builder("cache.tier.evictions", cache, c -> c.stats().evictionCount()).tags(tags).register(registry);
+        Gauge.builder("cache.tier.hit.ratio", cache, c -> c.stats().hitRate()).tags(tags).register(registry);
+        Gauge.builder("cache.tier.resident.bytes", cache,
+                        c -> c.policy().eviction().map(e -> (double) e.weightedSize().orElse(0L)).orElse(0.0))
+                .tags(tags)
+                .baseUnit("bytes")
+                .register(registry);
+    }
+}
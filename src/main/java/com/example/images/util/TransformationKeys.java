@@ -0,0 +1,80 @@
+package com.example.images.util;
+
+import com.example.images.dto.TransformationRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Locale;
+
+public class TransformationKeys {
+
+    public static final String DEFAULT_FORMAT = "jpg";
+
+    /**
+     * Builds a canonical string for a transformation spec so that requests producing
+     * the same output map to the same key (e.g. "jpeg" vs "jpg", flip=false vs absent).
+     */
+    public static String canonicalize(TransformationRequest.Transformations t) {
+        StringBuilder sb = new StringBuilder();
+        if (t != null) {
+            if (t.getResize() != null) {
+                sb.append("resize=").append(t.getResize().getWidth()).append('x').append(t.getResize().getHeight()).append(';');
+            }
+            if (t.getCrop() != null) {
+                TransformationRequest.Crop c = t.getCrop();
+                sb.append("crop=").append(c.getX()).append(',').append(c.getY()).append(',')
+                        .append(c.getWidth()).append('x').append(c.getHeight()).append(';');
+            }
+            if (t.getRotate() != null) {
+                sb.append("rotate=").append(Math.floorMod(t.getRotate(), 360)).append(';');
+            }
+            if (Boolean.TRUE.equals(t.getFlip())) sb.append("flip;");
+            if (Boolean.TRUE.equals(t.getMirror())) sb.append("mirror;");
+            if (t.getFilters() != null) {
+                if (Boolean.TRUE.equals(t.getFilters().getGrayscale())) sb.append("grayscale;");
+                if (Boolean.TRUE.equals(t.getFilters().getSepia())) sb.append("sepia;");
+            }
+            if (t.getWatermark() != null) {
+                sb.append("watermark=").append(t.getWatermark().length()).append(':').append(t.getWatermark()).append(';');
+            }
+        }
+        String format = normalizeFormat(t != null ? t.getFormat() : null);
+        sb.append("format=").append(format);
+        // Only options the encoder uses change the output
+        ImageEncoder encoder = ImageEncoders.forFormat(format);
+        if (t != null && encoder != null) {
+            if (t.getQuality() != null && encoder.supports(ImageEncoder.Option.QUALITY)) {
+                sb.append(";quality=").append(t.getQuality());
+            }
+            if (t.getProgressive() != null && encoder.supports(ImageEncoder.Option.PROGRESSIVE)) {
+                sb.append(";progressive=").append(t.getProgressive());
+            }
+            if (t.getCompressionLevel() != null && encoder.supports(ImageEncoder.Option.COMPRESSION_LEVEL)) {
+                sb.append(";compressionLevel=").append(t.getCompressionLevel());
+            }
+        }
+        return sb.toString();
+    }
+
+    public static String normalizeFormat(String format) {
+        if (format == null || format.isBlank()) return DEFAULT_FORMAT;
+        String f = format.trim().toLowerCase(Locale.ROOT);
+        return switch (f) {
+            case "jpeg" -> "jpg";
+            case "tif" -> "tiff";
+            default -> f;
+        };
+    }
+
+    /**
+     * Content address of a derivative: SHA-256 over the source identity and the canonical spec.
+     */
+    public static String hash(String source, TransformationRequest.Transformations t) {
+        MessageDigest digest = ContentHash.newDigest();
+        digest.update(source.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '|');
+        digest.update(canonicalize(t).getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
@@ -0,0 +1,6 @@
+package com.example.images.util;
+
+import java.nio.file.Path;
+
+public record TransformedImage(Path path, ImageMetadata metadata) {
+}
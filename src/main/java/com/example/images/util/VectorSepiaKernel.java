@@ -0,0 +1,40 @@
+package com.example.images.util;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD version of the sepia kernel. Only loaded when the JVM was started with
+ * {@code --add-modules jdk.incubator.vector}; see {@link PixelKernels#sepia()}.
+ */
+class VectorSepiaKernel implements PixelKernel {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    @Override
+    public void apply(int[] pixels, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        for (int upper = offset + SPECIES.loopBound(length); i < upper; i += SPECIES.length()) {
+            IntVector v = IntVector.fromArray(SPECIES, pixels, i);
+            IntVector r = v.lanewise(VectorOperators.LSHR, 16).and(0xFF);
+            IntVector g = v.lanewise(VectorOperators.LSHR, 8).and(0xFF);
+            IntVector b = v.and(0xFF);
+
+            IntVector tr = r.mul(PixelKernels.SEPIA_RR).add(g.mul(PixelKernels.SEPIA_RG)).add(b.mul(PixelKernels.SEPIA_RB))
+                    .lanewise(VectorOperators.ASHR, 16).min(255);
+            IntVector tg = r.mul(PixelKernels.SEPIA_GR).add(g.mul(PixelKernels.SEPIA_GG)).add(b.mul(PixelKernels.SEPIA_GB))
+                    .lanewise(VectorOperators.ASHR, 16).min(255);
+            IntVector tb = r.mul(PixelKernels.SEPIA_BR).add(g.mul(PixelKernels.SEPIA_BG)).add(b.mul(PixelKernels.SEPIA_BB))
+                    .lanewise(VectorOperators.ASHR, 16);
+
+            tr.lanewise(VectorOperators.LSHL, 16)
+                    .or(tg.lanewise(VectorOperators.LSHL, 8))
+                    .or(tb)
+                    .or(0xFF000000)
+                    .intoArray(pixels, i);
+        }
+        PixelKernels.SCALAR_SEPIA.apply(pixels, i, end - i);
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.images.util;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Lossy WebP through the system libwebp, called with the foreign function API (no JNI glue, no
+ * bundled binaries). {@link #load} returns null where the library is not installed.
+ */
+class WebPEncoder implements ImageEncoder {
+
+    // libwebp's own default, and cwebp's
+    private static final float DEFAULT_QUALITY = 75f;
+    private static final int MAX_DIMENSION = 16383;
+
+    private static final List<String> LIBRARY_NAMES = List.of(
+            System.mapLibraryName("webp"), "libwebp.so.7", "libwebp.so.6", "libwebp.7.dylib");
+
+    // size_t WebPEncodeBGR(const uint8_t* bgr, int width, int height, int stride, float quality, uint8_t** output)
+    private final MethodHandle encodeBgr;
+    private final MethodHandle encodeBgra;
+    private final MethodHandle free;
+
+    private WebPEncoder(SymbolLookup lib) {
+        Linker linker = Linker.nativeLinker();
+        FunctionDescriptor encode = FunctionDescriptor.of(ValueLayout.JAVA_LONG, ValueLayout.ADDRESS,
+                ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_FLOAT,
+                ValueLayout.ADDRESS);
+        this.encodeBgr = linker.downcallHandle(lib.find("WebPEncodeBGR").orElseThrow(), encode);
+        this.encodeBgra = linker.downcallHandle(lib.find("WebPEncodeBGRA").orElseThrow(), encode);
+        this.free = linker.downcallHandle(lib.find("WebPFree").orElseThrow(),
+                FunctionDescriptor.ofVoid(ValueLayout.ADDRESS));
+    }
+
+    static WebPEncoder load() {
+        for (String name : LIBRARY_NAMES) {
+            try {
+                return new WebPEncoder(SymbolLookup.libraryLookup(name, Arena.global()));
+            } catch (IllegalArgumentException | NoSuchElementException e) {
+                // not installed under this name, or too old to have WebPFree
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String format() {
+        return "webp";
+    }
+
+    @Override
+    public String mimeType() {
+        return "image/webp";
+    }
+
+    @Override
+    public boolean supports(Option option) {
+        return option == Option.QUALITY;
+    }
+
+    @Override
+    public void encode(BufferedImage image, EncodeOptions options, Path target) throws IOException {
+        int w = image.getWidth();
+        int h = image.getHeight();
+        if (w > MAX_DIMENSION || h > MAX_DIMENSION) {
+            throw new IOException("WebP images are at most " + MAX_DIMENSION + " pixels per side, got " + w + "x" + h);
+        }
+        float quality = options.quality() != null ? options.quality() : DEFAULT_QUALITY;
+        boolean alpha = image.getColorModel().hasAlpha();
+
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment pixels;
+            MethodHandle encode;
+            int stride;
+            if (alpha) {
+                // Packed ARGB ints are B, G, R, A in memory on little-endian machines
+                int[] argb = ((DataBufferInt) packed(image, BufferedImage.TYPE_INT_ARGB).getRaster().getDataBuffer()).getData();
+                pixels = arena.allocateArray(ValueLayout.JAVA_INT, argb);
+                encode = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? encodeBgra : null;
+                stride = w * 4;
+            } else {
+                byte[] bgr = ((DataBufferByte) packed(image, BufferedImage.TYPE_3BYTE_BGR).getRaster().getDataBuffer()).getData();
+                pixels = arena.allocateArray(ValueLayout.JAVA_BYTE, bgr);
+                encode = encodeBgr;
+                stride = w * 3;
+            }
+            if (encode == null) {
+                throw new IOException("WebP with alpha is only supported on little-endian machines");
+            }
+
+            MemorySegment output = arena.allocate(ValueLayout.ADDRESS);
+            long size = (long) encode.invokeExact(pixels, w, h, stride, quality, output);
+            MemorySegment encoded = output.get(ValueLayout.ADDRESS, 0);
+            try {
+                if (size == 0) {
+                    throw new IOException("libwebp failed to encode a " + w + "x" + h + " image");
+                }
+                Files.write(target, encoded.reinterpret(size).toArray(ValueLayout.JAVA_BYTE));
+            } finally {
+                if (!encoded.equals(MemorySegment.NULL)) {
+                    free.invokeExact(encoded);
+                }
+            }
+        } catch (IOException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IOException("libwebp call failed", t);
+        }
+    }
+
+    // The image itself when it already has this layout and owns its whole buffer, else a converted copy
+    private static BufferedImage packed(BufferedImage image, int type) {
+        if (image.getType() == type && image.getRaster().getParent() == null
+                && image.getRaster().getDataBuffer().getSize() == image.getWidth() * image.getHeight()
+                * (type == BufferedImage.TYPE_3BYTE_BGR ? 3 : 1)) {
+            return image;
+        }
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), type);
+        Graphics2D g = copy.createGraphics();
+        try {
+            g.drawImage(image, 0, 0, null);
+        } finally {
+            g.dispose();
+        }
+        return copy;
+    }
+}
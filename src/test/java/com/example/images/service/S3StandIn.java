@@ -0,0 +1,295 @@
+package com.example.images.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * In-process, in-memory stand-in for an S3-compatible object store, so tests and the load test can
+ * run the s3 storage backend without a real bucket. Speaks the path-style subset the backend uses:
+ * object PUT/GET/HEAD/DELETE and multipart uploads. Every request must carry a SigV4 signature by
+ * the configured key, recomputed here from what was received, and signed payload hashes are checked
+ * against the body.
+ */
+public class S3StandIn {
+
+    private static final Pattern PART = Pattern.compile(
+            "<Part><PartNumber>(\\d+)</PartNumber><ETag>([^<]*)</ETag></Part>");
+    private static final Pattern AUTHORIZATION = Pattern.compile(
+            "AWS4-HMAC-SHA256 Credential=([^/]+)/(\\d{8})/([^/]+)/s3/aws4_request, "
+                    + "SignedHeaders=([^,]+), Signature=([0-9a-f]{64})");
+
+    private final String accessKey;
+    private final String secretKey;
+    private final String region;
+    private final HttpServer server;
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    private final Map<String, Map<Integer, byte[]>> multipartUploads = new ConcurrentHashMap<>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicBoolean failNextPart = new AtomicBoolean();
+
+    public S3StandIn(String accessKey, String secretKey, String region) throws IOException {
+        this.accessKey = accessKey;
+        this.secretKey = secretKey;
+        this.region = region;
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    public String endpoint() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public int objectCount() {
+        return objects.size();
+    }
+
+    public long requestCount() {
+        return requests.get();
+    }
+
+    /** Multipart uploads that were started and neither completed nor aborted. */
+    public int openMultipartUploads() {
+        return multipartUploads.size();
+    }
+
+    /** Makes the next part upload fail with a 500, as a flaky store would. */
+    public void failNextPart() {
+        failNextPart.set(true);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try (exchange) {
+            String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            if (authorization == null) {
+                respond(exchange, 403, error("AccessDenied"));
+                return;
+            }
+            if (!signatureMatches(exchange, authorization)) {
+                respond(exchange, 403, error("SignatureDoesNotMatch"));
+                return;
+            }
+            String key = exchange.getRequestURI().getPath(); // /<bucket>/<key>, kept whole
+            Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+            byte[] body = exchange.getRequestBody().readAllBytes();
+
+            String payloadHash = exchange.getRequestHeaders().getFirst("x-amz-content-sha256");
+            if (payloadHash != null && !payloadHash.equals("UNSIGNED-PAYLOAD") && !payloadHash.equals(sha256(body))) {
+                respond(exchange, 400, error("XAmzContentSHA256Mismatch"));
+                return;
+            }
+
+            switch (exchange.getRequestMethod()) {
+                case "PUT" -> put(exchange, key, query, body);
+                case "POST" -> post(exchange, key, query, body);
+                case "GET", "HEAD" -> get(exchange, key);
+                case "DELETE" -> delete(exchange, key, query);
+                default -> respond(exchange, 405, error("MethodNotAllowed"));
+            }
+        }
+    }
+
+    private void put(HttpExchange exchange, String key, Map<String, String> query, byte[] body) throws IOException {
+        String uploadId = query.get("uploadId");
+        if (uploadId == null) {
+            objects.put(key, body);
+            exchange.getResponseHeaders().set("ETag", eTag(body));
+            respond(exchange, 200, null);
+            return;
+        }
+        Map<Integer, byte[]> parts = multipartUploads.get(uploadId);
+        if (parts == null) {
+            respond(exchange, 404, error("NoSuchUpload"));
+            return;
+        }
+        if (failNextPart.compareAndSet(true, false)) {
+            respond(exchange, 500, error("InternalError"));
+            return;
+        }
+        parts.put(Integer.parseInt(query.get("partNumber")), body);
+        exchange.getResponseHeaders().set("ETag", eTag(body));
+        respond(exchange, 200, null);
+    }
+
+    private void post(HttpExchange exchange, String key, Map<String, String> query, byte[] body) throws IOException {
+        if (query.containsKey("uploads")) {
+            String uploadId = UUID.randomUUID().toString();
+            multipartUploads.put(uploadId, new ConcurrentSkipListMap<>());
+            respond(exchange, 200, "<InitiateMultipartUploadResult><UploadId>" + uploadId
+                    + "</UploadId></InitiateMultipartUploadResult>");
+            return;
+        }
+        Map<Integer, byte[]> parts = multipartUploads.remove(query.get("uploadId"));
+        if (parts == null) {
+            respond(exchange, 404, error("NoSuchUpload"));
+            return;
+        }
+        ByteArrayOutputStream assembled = new ByteArrayOutputStream();
+        Matcher m = PART.matcher(new String(body, StandardCharsets.UTF_8));
+        while (m.find()) {
+            byte[] part = parts.get(Integer.parseInt(m.group(1)));
+            if (part == null || !eTag(part).equals(m.group(2))) {
+                // Like S3, a failed completion is reported in the body of a 200
+                respond(exchange, 200, error("InvalidPart"));
+                return;
+            }
+            assembled.write(part);
+        }
+        objects.put(key, assembled.toByteArray());
+        respond(exchange, 200, "<CompleteMultipartUploadResult></CompleteMultipartUploadResult>");
+    }
+
+    private void get(HttpExchange exchange, String key) throws IOException {
+        byte[] object = objects.get(key);
+        if (object == null) {
+            respond(exchange, 404, "HEAD".equals(exchange.getRequestMethod()) ? null : error("NoSuchKey"));
+            return;
+        }
+        exchange.getResponseHeaders().set("ETag", eTag(object));
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().set("Content-Length", String.valueOf(object.length));
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(200, object.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(object);
+        }
+    }
+
+    private void delete(HttpExchange exchange, String key, Map<String, String> query) throws IOException {
+        String uploadId = query.get("uploadId");
+        if (uploadId != null) {
+            multipartUploads.remove(uploadId);
+        } else {
+            objects.remove(key);
+        }
+        respond(exchange, 204, null);
+    }
+
+    // Recomputes the signature over the request as received: raw path, sorted query and the signed headers
+    private boolean signatureMatches(HttpExchange exchange, String authorization) {
+        Matcher m = AUTHORIZATION.matcher(authorization);
+        if (!m.matches() || !m.group(1).equals(accessKey) || !m.group(3).equals(region)) {
+            return false;
+        }
+        String date = m.group(2);
+        String amzDate = exchange.getRequestHeaders().getFirst("x-amz-date");
+        if (amzDate == null || !amzDate.startsWith(date)) {
+            return false;
+        }
+        String rawQuery = exchange.getRequestURI().getRawQuery();
+        String canonicalQuery = rawQuery == null ? "" : Arrays.stream(rawQuery.split("&"))
+                .map(pair -> pair.contains("=") ? pair : pair + "=")
+                .sorted()
+                .collect(Collectors.joining("&"));
+        StringBuilder canonicalHeaders = new StringBuilder();
+        for (String name : m.group(4).split(";")) {
+            String value = exchange.getRequestHeaders().getFirst(name);
+            if (value == null) {
+                return false;
+            }
+            canonicalHeaders.append(name).append(':').append(value.trim()).append('\n');
+        }
+        String canonicalRequest = String.join("\n", exchange.getRequestMethod(),
+                exchange.getRequestURI().getRawPath(), canonicalQuery, canonicalHeaders.toString(), m.group(4),
+                exchange.getRequestHeaders().getFirst("x-amz-content-sha256"));
+        String scope = date + "/" + region + "/s3/aws4_request";
+        String stringToSign = "AWS4-HMAC-SHA256\n" + amzDate + "\n" + scope + "\n"
+                + sha256(canonicalRequest.getBytes(StandardCharsets.UTF_8));
+        byte[] key = hmac(("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8), date);
+        key = hmac(key, region);
+        key = hmac(key, "s3");
+        key = hmac(key, "aws4_request");
+        return HexFormat.of().formatHex(hmac(key, stringToSign)).equals(m.group(5));
+    }
+
+    private static byte[] hmac(byte[] key, String data) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String xml) throws IOException {
+        if (xml == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] bytes = xml.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/xml");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String error(String code) {
+        return "<Error><Code>" + code + "</Code></Error>";
+    }
+
+    private static Map<String, String> query(String raw) {
+        Map<String, String> query = new HashMap<>();
+        if (raw == null) return query;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            query.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    private static String eTag(byte[] bytes) {
+        try {
+            return "\"" + HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(bytes)) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
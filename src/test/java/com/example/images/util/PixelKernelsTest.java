@@ -0,0 +1,122 @@
+package com.example.images.util;
+
+import jdk.incubator.vector.IntVector;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The Q16 sepia kernels against the floating point formula of
+ * {@link ImageProcessorUtil#applyStepwise}: within one level per channel, with the vector kernel
+ * identical to the scalar one.
+ */
+class PixelKernelsTest {
+
+    private static final int LANES = IntVector.SPECIES_PREFERRED.length();
+
+    private final PixelKernel vector = new VectorSepiaKernel();
+
+    @Test
+    void scalarSepiaIsWithinOneLevelOfFloatingPointForEveryColour() {
+        int[] pixels = new int[1 << 16];
+        for (int r = 0; r < 256; r++) {
+            for (int i = 0; i < pixels.length; i++) {
+                pixels[i] = 0xFF000000 | (r << 16) | i;
+            }
+            int[] scalar = pixels.clone();
+            PixelKernels.SCALAR_SEPIA.apply(scalar, 0, scalar.length);
+            for (int i = 0; i < pixels.length; i++) {
+                assertWithinOneLevel(pixels[i], scalar[i]);
+            }
+        }
+    }
+
+    @Test
+    void vectorSepiaMatchesScalarForEveryColour() {
+        int[] pixels = new int[1 << 16];
+        for (int r = 0; r < 256; r++) {
+            for (int i = 0; i < pixels.length; i++) {
+                pixels[i] = 0xFF000000 | (r << 16) | i;
+            }
+            int[] scalar = pixels.clone();
+            int[] vectorized = pixels.clone();
+            PixelKernels.SCALAR_SEPIA.apply(scalar, 0, scalar.length);
+            vector.apply(vectorized, 0, vectorized.length);
+            assertArrayEquals(scalar, vectorized, "r=" + r);
+        }
+    }
+
+    @Test
+    void vectorSepiaHandlesTailsAndOffsets() {
+        Random random = new Random(42);
+        // Every length up to three full vectors plus a tail, at aligned and unaligned offsets
+        for (int offset : new int[]{0, 1, LANES - 1, LANES + 3}) {
+            for (int length = 0; length <= 3 * LANES + LANES - 1; length++) {
+                int[] pixels = new int[offset + length + LANES];
+                for (int i = 0; i < pixels.length; i++) {
+                    pixels[i] = random.nextInt();
+                }
+                int[] scalar = pixels.clone();
+                int[] vectorized = pixels.clone();
+                PixelKernels.SCALAR_SEPIA.apply(scalar, offset, length);
+                vector.apply(vectorized, offset, length);
+
+                assertArrayEquals(scalar, vectorized, "offset " + offset + ", length " + length);
+                for (int i = 0; i < pixels.length; i++) {
+                    if (i < offset || i >= offset + length) {
+                        int index = i;
+                        assertEquals(pixels[i], vectorized[i], () -> "pixel " + index + " outside the range was changed");
+                    } else {
+                        assertWithinOneLevel(pixels[i], vectorized[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void brightColoursClampAt255() {
+        int[] pixels = new int[LANES + 3];
+        Arrays.fill(pixels, 0x00FFFFFF); // alpha is dropped: sepia output is opaque
+        pixels[LANES + 1] = 0xFFFFC080; // red and green overflow, blue does not
+        int[] scalar = pixels.clone();
+        int[] vectorized = pixels.clone();
+        PixelKernels.SCALAR_SEPIA.apply(scalar, 0, scalar.length);
+        vector.apply(vectorized, 0, vectorized.length);
+
+        // 0.272 + 0.534 + 0.131 of 255 is 238.9, so only blue stays below the clamp
+        assertEquals(0xFFFFFFEE, scalar[0]);
+        assertEquals(0xFFFFFFEE, scalar[LANES + 2]);
+        assertArrayEquals(scalar, vectorized);
+        for (int i = 0; i < pixels.length; i++) {
+            assertWithinOneLevel(pixels[i], scalar[i]);
+        }
+    }
+
+    private static void assertWithinOneLevel(int source, int actual) {
+        int expected = floatSepia(source);
+        assertEquals(0xFF, actual >>> 24);
+        for (int shift = 0; shift < 24; shift += 8) {
+            int e = (expected >> shift) & 0xFF;
+            int a = (actual >> shift) & 0xFF;
+            assertTrue(Math.abs(e - a) <= 1, () -> String.format("sepia of %06x: expected %06x, got %06x",
+                    source & 0xFFFFFF, expected & 0xFFFFFF, actual & 0xFFFFFF));
+        }
+    }
+
+    // The reference formula, as ImageProcessorUtil.applySepia computes it
+    private static int floatSepia(int rgb) {
+        int r = (rgb >> 16) & 0xFF;
+        int g = (rgb >> 8) & 0xFF;
+        int b = rgb & 0xFF;
+        int tr = Math.min(255, (int) (0.393 * r + 0.769 * g + 0.189 * b));
+        int tg = Math.min(255, (int) (0.349 * r + 0.686 * g + 0.168 * b));
+        int tb = Math.min(255, (int) (0.272 * r + 0.534 * g + 0.131 * b));
+        return 0xFF000000 | (tr << 16) | (tg << 8) | tb;
+    }
+}
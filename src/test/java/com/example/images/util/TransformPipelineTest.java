@@ -0,0 +1,342 @@
+package com.example.images.util;
+
+import com.example.images.dto.TransformationRequest;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The fused pipeline against the step-by-step reference, within the tolerances documented on
+ * {@link TransformPipeline} (summed where steps combine): exact for resize, crop, flip, mirror and
+ * grayscale, one level for sepia, two for right-angle rotates, and a small mean error where a
+ * resize and an arbitrary rotate are resampled once instead of twice. Decode plans (source
+ * region and subsampling) are checked on a large JPEG read through ImageIO, against the full decode.
+ */
+class TransformPipelineTest {
+
+    private static final int LARGE_WIDTH = 2400;
+    private static final int LARGE_HEIGHT = 1600;
+
+    @TempDir
+    static Path dir;
+
+    private static Path largeFile;
+    private static BufferedImage largeDecoded;
+
+    @BeforeAll
+    static void writeLargeSource() throws IOException {
+        largeFile = dir.resolve("large.jpg");
+        ImageIO.write(detailed(LARGE_WIDTH, LARGE_HEIGHT), "jpg", largeFile.toFile());
+        largeDecoded = ImageIO.read(largeFile.toFile());
+    }
+
+    record Case(String name, TransformationRequest.Transformations spec, int maxDiff, double maxMeanDiff) {
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    static Stream<Arguments> cases() {
+        Case[] cases = {
+                new Case("resize",
+                        spec(resize(61, 43), null, null, false, false, false, false), 0, 0),
+                new Case("crop+flip+mirror",
+                        spec(null, crop(7, 5, 53, 31), null, true, true, false, false), 0, 0),
+                new Case("resize+crop+grayscale",
+                        spec(resize(150, 91), crop(13, 9, 77, 59), null, false, false, true, false), 0, 0),
+                new Case("crop+resize+rotate90+flip",
+                        spec(resize(75, 51), crop(3, 1, 67, 49), 90, true, false, false, false), 2, 0.05),
+                new Case("resize+rotate270+mirror+grayscale",
+                        spec(resize(83, 57), null, 270, false, true, true, false), 2, 0.05),
+                new Case("crop+rotate180+sepia",
+                        spec(null, crop(11, 4, 81, 61), 180, false, false, false, true), 3, 0.05),
+                new Case("resize+rotate30+flip",
+                        spec(resize(88, 60), null, 30, true, false, false, false), 20, 0.5),
+        };
+        int[] types = {BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_BYTE_GRAY};
+        // Odd widths and heights, so centres of rotation fall between pixels
+        return Stream.of(cases).flatMap(c -> Stream.of(101, 97).flatMap(w ->
+                Arrays.stream(types).mapToObj(type -> Arguments.of(c, w, type))));
+    }
+
+    @ParameterizedTest(name = "{0} on {1}px type {2}")
+    @MethodSource("cases")
+    void fusedMatchesStepwise(Case c, int width, int type) throws IOException {
+        BufferedImage source = generate(width, (width * 2 / 3) | 1, type);
+        BufferedImage expected = ImageProcessorUtil.applyStepwise(copyOf(source), c.spec());
+
+        TransformPipeline pipeline = TransformPipeline.compile(source.getWidth(), source.getHeight(), c.spec());
+        assertMatches(c, expected, pipeline.executeDetached(source));
+        assertMatches(c, expected, pipeline.execute(copyOf(source)));
+    }
+
+    @ParameterizedTest(name = "orientation {0}")
+    @ValueSource(ints = {1, 2, 3, 4, 5, 6, 7, 8})
+    void orientedSourcesRenderUpright(int orientation) throws IOException {
+        BufferedImage stored = generate(41, 27, BufferedImage.TYPE_INT_RGB);
+        BufferedImage upright = upright(stored, orientation);
+
+        TransformationRequest.Transformations none = spec(null, null, null, false, false, false, false);
+        assertIdentical(upright, TransformPipeline.compile(41, 27, orientation, none).executeDetached(stored));
+
+        // A crop of the upright image, decoded from only the stored pixels the plan asks for
+        TransformationRequest.Transformations cropped = spec(null, crop(3, 14, 11, 9), null, false, false, false, false);
+        TransformPipeline pipeline = TransformPipeline.compile(41, 27, orientation, cropped);
+        TransformPipeline.DecodePlan plan = pipeline.decodePlan();
+        BufferedImage decoded = stored.getSubimage(plan.region().x, plan.region().y,
+                plan.region().width, plan.region().height);
+        assertIdentical(upright.getSubimage(3, 14, 11, 9), pipeline.forDecoded(plan).execute(decoded));
+    }
+
+    /**
+     * A downscale of 4x or more decodes every 2nd or 4th pixel and resamples that, instead of
+     * resampling the full decode. Against an area-averaged reference it must do at least as well
+     * as the full decode (on this source: 35.1 vs 32.9 dB at 8x, 44.5 vs 40.7 dB at 4x).
+     */
+    @ParameterizedTest(name = "{0}x{1}")
+    @MethodSource("downscales")
+    void subsampledDecodeIsNoWorseThanFullDecode(int width, int height) throws IOException {
+        TransformationRequest.Transformations t = spec(resize(width, height), null, null, false, false, false, false);
+        TransformPipeline pipeline = TransformPipeline.compile(LARGE_WIDTH, LARGE_HEIGHT, t);
+        assertTrue(pipeline.decodePlan().subsampling() > 1, "expected a subsampled decode");
+
+        BufferedImage reference = areaAverage(largeDecoded, width, height);
+        double full = psnr(reference, pipeline.execute(copyOf(largeDecoded)));
+        double subsampled = psnr(reference, ImageProcessorUtil.decodeAndTransform(largeFile, t, "jpg"));
+        assertTrue(subsampled >= full, "subsampled " + subsampled + " dB < full decode " + full + " dB");
+    }
+
+    static Stream<Arguments> downscales() {
+        return Stream.of(Arguments.of(300, 200), Arguments.of(600, 400));
+    }
+
+    /**
+     * Crops decode only the source region they read. Without subsampling the output is identical
+     * to the full decode; with it, it is at least 42 dB from the full decode (45.4 dB here) and no
+     * further from the area-averaged reference.
+     */
+    @Test
+    void regionDecodeMatchesFullDecode() throws IOException {
+        TransformationRequest.Transformations cropOnly = spec(null, crop(517, 283, 640, 480), null,
+                false, false, false, false);
+        assertTrue(TransformPipeline.compile(LARGE_WIDTH, LARGE_HEIGHT, cropOnly).decodePlan().region() != null);
+        assertIdentical(fullDecode(cropOnly), ImageProcessorUtil.decodeAndTransform(largeFile, cropOnly, "jpg"));
+
+        TransformationRequest.Transformations halved = spec(resize(1200, 800), crop(301, 157, 500, 350), null,
+                false, false, false, false);
+        TransformPipeline.DecodePlan plan = TransformPipeline.compile(LARGE_WIDTH, LARGE_HEIGHT, halved).decodePlan();
+        assertTrue(plan.region() != null && plan.subsampling() == 1, plan.toString());
+        assertIdentical(fullDecode(halved), ImageProcessorUtil.decodeAndTransform(largeFile, halved, "jpg"));
+
+        TransformationRequest.Transformations quartered = spec(resize(600, 400), crop(151, 79, 250, 175), null,
+                false, false, false, false);
+        plan = TransformPipeline.compile(LARGE_WIDTH, LARGE_HEIGHT, quartered).decodePlan();
+        assertTrue(plan.region() != null && plan.subsampling() > 1, plan.toString());
+        BufferedImage full = fullDecode(quartered);
+        BufferedImage decoded = ImageProcessorUtil.decodeAndTransform(largeFile, quartered, "jpg");
+        double fromFull = psnr(full, decoded);
+        assertTrue(fromFull >= 42, "region decode is " + fromFull + " dB from the full decode");
+        BufferedImage reference = areaAverage(largeDecoded, 600, 400).getSubimage(151, 79, 250, 175);
+        assertTrue(psnr(reference, decoded) >= psnr(reference, full), "region decode is further from the reference");
+    }
+
+    private static BufferedImage fullDecode(TransformationRequest.Transformations t) throws IOException {
+        return TransformPipeline.compile(LARGE_WIDTH, LARGE_HEIGHT, t).execute(copyOf(largeDecoded));
+    }
+
+    // What a viewer shows for each EXIF orientation, pixel by pixel
+    private static BufferedImage upright(BufferedImage stored, int orientation) {
+        int w = stored.getWidth();
+        int h = stored.getHeight();
+        boolean swap = orientation >= 5;
+        BufferedImage out = new BufferedImage(swap ? h : w, swap ? w : h, stored.getType());
+        for (int y = 0; y < out.getHeight(); y++) {
+            for (int x = 0; x < out.getWidth(); x++) {
+                int rgb = switch (orientation) {
+                    case 2 -> stored.getRGB(w - 1 - x, y);
+                    case 3 -> stored.getRGB(w - 1 - x, h - 1 - y);
+                    case 4 -> stored.getRGB(x, h - 1 - y);
+                    case 5 -> stored.getRGB(y, x);
+                    case 6 -> stored.getRGB(y, h - 1 - x);
+                    case 7 -> stored.getRGB(w - 1 - y, h - 1 - x);
+                    case 8 -> stored.getRGB(w - 1 - y, x);
+                    default -> stored.getRGB(x, y);
+                };
+                out.setRGB(x, y, rgb);
+            }
+        }
+        return out;
+    }
+
+    private static void assertIdentical(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth(), "width");
+        assertEquals(expected.getHeight(), actual.getHeight(), "height");
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y), "pixel " + x + "," + y);
+            }
+        }
+    }
+
+    private static void assertMatches(Case c, BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth(), "width");
+        assertEquals(expected.getHeight(), actual.getHeight(), "height");
+        // Gray rasters hold linear gray, where one stored level near black is up to 9 sRGB levels
+        boolean gray = expected.getType() == BufferedImage.TYPE_BYTE_GRAY
+                && actual.getType() == BufferedImage.TYPE_BYTE_GRAY;
+        int channels = gray ? 1 : 3;
+        int max = 0;
+        long total = 0;
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                int e = gray ? expected.getRaster().getSample(x, y, 0) : expected.getRGB(x, y);
+                int a = gray ? actual.getRaster().getSample(x, y, 0) : actual.getRGB(x, y);
+                for (int shift = 0; shift < 8 * channels; shift += 8) {
+                    int d = Math.abs(((e >> shift) & 0xff) - ((a >> shift) & 0xff));
+                    max = Math.max(max, d);
+                    total += d;
+                }
+            }
+        }
+        double mean = (double) total / ((long) channels * expected.getWidth() * expected.getHeight());
+        assertTrue(max <= c.maxDiff(), c + ": max channel difference " + max + " > " + c.maxDiff());
+        assertTrue(mean <= c.maxMeanDiff(), c + ": mean channel difference " + mean + " > " + c.maxMeanDiff());
+    }
+
+    // Fine detail near and above the output Nyquist limit, where a decimating decode could alias
+    private static BufferedImage detailed(int w, int h) {
+        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(7);
+        int[] row = new int[w];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                double r2 = ((x - w / 2.0) * (x - w / 2.0) + (y - h / 2.0) * (y - h / 2.0)) / w;
+                int r = clamp(x * 255 / w + (int) (50 * Math.sin(r2 * 0.6)) + random.nextInt(24));
+                int g = clamp(y * 255 / h + (int) (50 * Math.sin(x * 0.11) * Math.cos(y * 0.07)) + random.nextInt(24));
+                int b = clamp(128 + (int) (90 * Math.sin((x + y) * 0.04)) + random.nextInt(24));
+                row[x] = (r << 16) | (g << 8) | b;
+            }
+            img.setRGB(0, y, w, 1, row, 0, w);
+        }
+        return img;
+    }
+
+    // Each output pixel is the mean of the source pixels it covers, the ideal a downscale approximates
+    private static BufferedImage areaAverage(BufferedImage src, int width, int height) {
+        BufferedImage out = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        double sx = (double) src.getWidth() / width;
+        double sy = (double) src.getHeight() / height;
+        for (int y = 0; y < height; y++) {
+            int y0 = (int) Math.floor(y * sy);
+            int y1 = Math.max(y0 + 1, (int) Math.floor((y + 1) * sy));
+            for (int x = 0; x < width; x++) {
+                int x0 = (int) Math.floor(x * sx);
+                int x1 = Math.max(x0 + 1, (int) Math.floor((x + 1) * sx));
+                long r = 0, g = 0, b = 0;
+                for (int j = y0; j < y1; j++) {
+                    for (int i = x0; i < x1; i++) {
+                        int rgb = src.getRGB(i, j);
+                        r += (rgb >> 16) & 0xff;
+                        g += (rgb >> 8) & 0xff;
+                        b += rgb & 0xff;
+                    }
+                }
+                long n = (long) (x1 - x0) * (y1 - y0);
+                out.setRGB(x, y, (int) ((r + n / 2) / n) << 16 | (int) ((g + n / 2) / n) << 8
+                        | (int) ((b + n / 2) / n));
+            }
+        }
+        return out;
+    }
+
+    private static double psnr(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth(), "width");
+        assertEquals(expected.getHeight(), actual.getHeight(), "height");
+        double sum = 0;
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                int e = expected.getRGB(x, y);
+                int a = actual.getRGB(x, y);
+                for (int shift = 0; shift < 24; shift += 8) {
+                    int d = ((e >> shift) & 0xff) - ((a >> shift) & 0xff);
+                    sum += d * d;
+                }
+            }
+        }
+        double mse = sum / (3.0 * expected.getWidth() * expected.getHeight());
+        return mse == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255 * 255 / mse);
+    }
+
+    private static int clamp(int v) {
+        return Math.max(0, Math.min(255, v));
+    }
+
+    private static BufferedImage generate(int w, int h, int type) {
+        BufferedImage img = new BufferedImage(w, h, type);
+        Random random = new Random(w * 31L + type);
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int r = x * 255 / w;
+                int g = y * 255 / h;
+                int b = (int) (128 + 100 * Math.sin((x + y) * 0.3)) + random.nextInt(20);
+                img.setRGB(x, y, (r << 16) | (g << 8) | Math.min(255, b));
+            }
+        }
+        return img;
+    }
+
+    private static BufferedImage copyOf(BufferedImage image) {
+        return new BufferedImage(image.getColorModel(), image.copyData(null), image.isAlphaPremultiplied(), null);
+    }
+
+    private static TransformationRequest.Transformations spec(TransformationRequest.Resize resize,
+                                                              TransformationRequest.Crop crop, Integer rotate,
+                                                              boolean flip, boolean mirror,
+                                                              boolean grayscale, boolean sepia) {
+        TransformationRequest.Transformations t = new TransformationRequest.Transformations();
+        t.setResize(resize);
+        t.setCrop(crop);
+        t.setRotate(rotate);
+        t.setFlip(flip);
+        t.setMirror(mirror);
+        if (grayscale || sepia) {
+            TransformationRequest.Filters f = new TransformationRequest.Filters();
+            f.setGrayscale(grayscale);
+            f.setSepia(sepia);
+            t.setFilters(f);
+        }
+        return t;
+    }
+
+    private static TransformationRequest.Resize resize(int width, int height) {
+        TransformationRequest.Resize r = new TransformationRequest.Resize();
+        r.setWidth(width);
+        r.setHeight(height);
+        return r;
+    }
+
+    private static TransformationRequest.Crop crop(int x, int y, int width, int height) {
+        TransformationRequest.Crop c = new TransformationRequest.Crop();
+        c.setX(x);
+        c.setY(y);
+        c.setWidth(width);
+        c.setHeight(height);
+        return c;
+    }
+}